@@ -0,0 +1,262 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Arrays;
+
+/**
+ * For each user, the numbers of the blocks with transactions from or
+ * to that user, and the user's balance after each of those blocks.
+ * A user's balance can only change in such a block, so the balance
+ * after any block is the one recorded at the last such block at or
+ * before it. The block numbers double as an index of each user's
+ * transactions. Postings are kept in an array indexed by ID in the
+ * chain's user dictionary.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+class BalanceHistory {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The names of the users.
+   */
+  private UserDictionary users;
+
+  /**
+   * The postings of each user, by ID, or null for a user with none.
+   */
+  private Postings[] postings;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a history with no users.
+   *
+   * @param users1
+   *   The names of the users.
+   */
+  BalanceHistory(UserDictionary users1) {
+    this.users = users1;
+    this.postings = new Postings[16];
+  } // BalanceHistory(UserDictionary)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the postings of a user.
+   *
+   * @param user
+   *   The name of the user.
+   *
+   * @return the postings, or null if the user has none.
+   */
+  private Postings find(String user) {
+    int id = this.users.find(user);
+    return (id < 0 || id >= this.postings.length) ? null : this.postings[id];
+  } // find(String)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Record the balances of the users in a block that was just applied
+   * to a ledger.
+   *
+   * @param blk
+   *   The block.
+   * @param ledger
+   *   The ledger, with the block applied.
+   */
+  void add(Block blk, Ledger ledger) {
+    for (Transaction tx : blk.getTransactions()) {
+      for (String user : new String[] {tx.getSource(), tx.getTarget()}) {
+        int id = this.users.id(user);
+        if (id == UserDictionary.NOBODY) {
+          continue;
+        } // if
+        if (id >= this.postings.length) {
+          this.postings =
+              Arrays.copyOf(this.postings, Math.max(id + 1, 2 * this.postings.length));
+        } // if
+        if (this.postings[id] == null) {
+          this.postings[id] = new Postings();
+        } // if
+        this.postings[id].record(blk.getNum(), ledger.balance(id));
+      } // for
+    } // for
+  } // add(Block, Ledger)
+
+  /**
+   * Forget a block that was the last one added.
+   *
+   * @param blk
+   *   The block.
+   */
+  void remove(Block blk) {
+    for (Transaction tx : blk.getTransactions()) {
+      for (String user : new String[] {tx.getSource(), tx.getTarget()}) {
+        int id = this.users.find(user);
+        Postings list = (id >= 0 && id < this.postings.length) ? this.postings[id] : null;
+        if (list != null && list.forget(blk.getNum())) {
+          this.postings[id] = null;
+        } // if
+      } // for
+    } // for
+  } // remove(Block)
+
+  /**
+   * Find one user's balance after some block.
+   *
+   * @param user
+   *   The user whose balance we want to find.
+   * @param num
+   *   The number of the block.
+   *
+   * @return that user's balance after the block (or 0, if the user had
+   *   no transactions by then).
+   */
+  int balance(String user, int num) {
+    Postings list = this.find(user);
+    return (list == null) ? 0 : list.balance(num);
+  } // balance(String, int)
+
+  /**
+   * Determine how many blocks have transactions from or to a user.
+   *
+   * @param user
+   *   The user.
+   *
+   * @return the number of blocks.
+   */
+  int count(String user) {
+    Postings list = this.find(user);
+    return (list == null) ? 0 : list.size;
+  } // count(String)
+
+  /**
+   * Find some of the blocks with transactions from or to a user.
+   *
+   * @param user
+   *   The user.
+   * @param from
+   *   The lowest block number to include.
+   * @param limit
+   *   The most block numbers to find.
+   *
+   * @return the numbers of the blocks, in increasing order.
+   */
+  int[] blocks(String user, int from, int limit) {
+    Postings list = this.find(user);
+    if (list == null) {
+      return new int[0];
+    } // if
+    int start = list.indexAt(Math.max(from, 0) - 1) + 1;
+    int end = (int) Math.min((long) start + limit, list.size);
+    return Arrays.copyOfRange(list.blocks, start, end);
+  } // blocks(String, int, int)
+
+  // +---------------+-----------------------------------------------
+  // | Inner classes |
+  // +---------------+
+
+  /**
+   * The postings of one user, in increasing order of block number.
+   */
+  static class Postings {
+    /**
+     * The number of postings.
+     */
+    int size;
+
+    /**
+     * The block numbers.
+     */
+    int[] blocks = new int[4];
+
+    /**
+     * The balance after each of those blocks.
+     */
+    int[] balances = new int[4];
+
+    /**
+     * Record the balance after a block, replacing any earlier posting
+     * for the same block.
+     *
+     * @param num
+     *   The number of the block. It must be at least that of the last
+     *   posting.
+     * @param balance
+     *   The balance after the block.
+     */
+    void record(int num, int balance) {
+      if (this.size > 0 && this.blocks[this.size - 1] == num) {
+        this.balances[this.size - 1] = balance;
+        return;
+      } // if
+      if (this.size == this.blocks.length) {
+        this.blocks = Arrays.copyOf(this.blocks, 2 * this.size);
+        this.balances = Arrays.copyOf(this.balances, 2 * this.size);
+      } // if
+      this.blocks[this.size] = num;
+      this.balances[this.size] = balance;
+      this.size++;
+    } // record(int, int)
+
+    /**
+     * Forget the posting for a block, if it is the last one.
+     *
+     * @param num
+     *   The number of the block.
+     *
+     * @return true if no postings remain and false otherwise.
+     */
+    boolean forget(int num) {
+      if (this.size > 0 && this.blocks[this.size - 1] == num) {
+        this.size--;
+      } // if
+      return this.size == 0;
+    } // forget(int)
+
+    /**
+     * Find the index of the last posting at or before some block.
+     *
+     * @param num
+     *   The number of the block.
+     *
+     * @return the index, or -1 if every posting is after the block.
+     */
+    int indexAt(int num) {
+      int lo = 0;
+      int hi = this.size;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (this.blocks[mid] <= num) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        } // if/else
+      } // while
+      return lo - 1;
+    } // indexAt(int)
+
+    /**
+     * Find the balance after some block.
+     *
+     * @param num
+     *   The number of the block.
+     *
+     * @return the balance.
+     */
+    int balance(int num) {
+      int i = this.indexAt(num);
+      return (i < 0) ? 0 : this.balances[i];
+    } // balance(int)
+  } // class Postings
+} // class BalanceHistory
@@ -1,11 +1,16 @@
 package edu.grinnell.csc207.blockchains;
 
 import java.nio.ByteBuffer;
-import java.security.MessageDigest;
+import java.util.List;
 
 /**
  * Blocks to be stored in blockchains.
  *
+ * A block holds either a single transaction or a batch of them. A
+ * batch is committed to through its Merkle root, so the hash of a
+ * batch block covers every transaction in it while mining one costs
+ * no more than mining a single transaction.
+ *
  * @author David William Stroud
  * @author Sheilla Muligande
  * @author Samuel A. Rebelsky
@@ -20,9 +25,19 @@ public class Block {
    */
   private int number;
   /**
-   * The transaction that this block contains.
+   * The transaction that this block contains (the first one, for
+   * a batch).
    */
   Transaction transaction;
+  /**
+   * The transactions in this block, or null if it holds just one.
+   */
+  private List<Transaction> batch;
+  /**
+   * The Merkle root of the batch, or null if this block holds just
+   * one transaction.
+   */
+  private Hash merkleRoot;
   /**
    * The hash of the previous block in the chain.
    */
@@ -86,6 +101,100 @@ public class Block {
     this.thisHash = this.computeHash();
   } // Block(int, Transaction, Hash, long)
 
+  /**
+   * Create a block with the given index, batch of transactions,
+   * previous hash, and nonce.
+   * @param num The index of this block in the chain.
+   * @param transactions1
+   *   The transactions this block contains, in order. There must
+   *   be at least one.
+   * @param prevHash1 The hash of the previous block.
+   * @param nonce1 The nonce to use in this block.
+   */
+  public Block(
+      int num,
+      List<Transaction> transactions1,
+      Hash prevHash1,
+      long nonce1
+  ) {
+    this.number = num;
+    this.batch = List.copyOf(transactions1);
+    this.merkleRoot = MerkleTree.root(this.batch);
+    this.transaction = this.batch.get(0);
+    this.prevHash = prevHash1;
+    this.nonce = nonce1;
+
+    this.thisHash = this.computeHash();
+  } // Block(int, List<Transaction>, Hash, long)
+
+  /**
+   * Create a block from parts that were stored earlier, trusting the
+   * stored hashes rather than computing them again.
+   * @param num The index of this block in the chain.
+   * @param transactions1
+   *   The transactions this block contains, in order: just one, for
+   *   a block that is not a batch.
+   * @param merkleRoot1
+   *   The Merkle root of the batch, or null if the block is not a
+   *   batch.
+   * @param prevHash1 The hash of the previous block.
+   * @param nonce1 The nonce of this block.
+   * @param thisHash1 The hash of this block.
+   */
+  Block(
+      int num,
+      List<Transaction> transactions1,
+      Hash merkleRoot1,
+      Hash prevHash1,
+      long nonce1,
+      Hash thisHash1
+  ) {
+    this.number = num;
+    this.transaction = transactions1.get(0);
+    if (merkleRoot1 != null) {
+      this.batch = List.copyOf(transactions1);
+      this.merkleRoot = merkleRoot1;
+    } // if
+    this.prevHash = prevHash1;
+    this.nonce = nonce1;
+    this.thisHash = thisHash1;
+  } // Block(int, List<Transaction>, Hash, Hash, long, Hash)
+
+  /**
+   * Create a block that holds a single transaction from parts that
+   * were stored earlier, trusting the stored hash rather than
+   * computing it again.
+   * @param num The index of this block in the chain.
+   * @param transaction1 The transaction this block contains.
+   * @param prevHash1 The hash of the previous block.
+   * @param nonce1 The nonce of this block.
+   * @param thisHash1 The hash of this block.
+   */
+  Block(int num, Transaction transaction1, Hash prevHash1, long nonce1, Hash thisHash1) {
+    this.number = num;
+    this.transaction = transaction1;
+    this.prevHash = prevHash1;
+    this.nonce = nonce1;
+    this.thisHash = thisHash1;
+  } // Block(int, Transaction, Hash, long, Hash)
+
+  /**
+   * Create a block with the same contents as another but a
+   * different nonce.
+   * @param other The block to copy.
+   * @param nonce1 The nonce to use in this block.
+   */
+  private Block(Block other, long nonce1) {
+    this.number = other.number;
+    this.transaction = other.transaction;
+    this.batch = other.batch;
+    this.merkleRoot = other.merkleRoot;
+    this.prevHash = other.prevHash;
+    this.nonce = nonce1;
+
+    this.thisHash = this.computeHash();
+  } // Block(Block, long)
+
   // +---------+-----------------------------------------------------
   // | Helpers |
   // +---------+
@@ -96,42 +205,64 @@ public class Block {
    * @return The hash of this block.
    */
   public Hash computeHash() {
-    try {
-      MessageDigest md = MessageDigest.getInstance("sha-256");
-      md.update(
-          ByteBuffer
-              .allocate(Integer.BYTES)
-              .putInt(this.getNum())
-              .array()
-      );
-      md.update(
-          this.getTransaction().getSource().getBytes()
-      );
-      md.update(
-          this.getTransaction().getTarget().getBytes()
-      );
-      md.update(
-          ByteBuffer
-              .allocate(Integer.BYTES)
-              .putInt(this.getTransaction().getAmount())
-              .array()
-      );
-      md.update(
-          this.getPrevHash().getBytes()
-      );
-      md.update(
-          ByteBuffer
-              .allocate(Long.BYTES)
-              .putLong(this.getNonce())
-              .array()
-      );
-      return new Hash(md.digest());
-    } catch (Exception err) {
-      // This should never happen.
-      return new Hash(new byte[0]);
-    } // try-catch
+    return this.computeHash(this.nonce);
   } // computeHash()
 
+  /**
+   * Compute the hash this block would have if its nonce were
+   * the given value. Does not change the block.
+   *
+   * @param nonce1 The nonce to use in place of this block's nonce.
+   * @return The hash of the block with that nonce.
+   */
+  Hash computeHash(long nonce1) {
+    return BlockHasher.local().hash(this, nonce1);
+  } // computeHash(long)
+
+  /**
+   * Create a block with the same contents as this one but a
+   * different nonce.
+   *
+   * @param nonce1 The nonce to use in the new block.
+   * @return The new block.
+   */
+  Block withNonce(long nonce1) {
+    return new Block(this, nonce1);
+  } // withNonce(long)
+
+  /**
+   * Get the bytes that precede the nonce when hashing this block: the
+   * number, source, target, amount, and previous hash, or, for a
+   * batch, the number, Merkle root, transaction count, and previous
+   * hash. These do not change while we search for a nonce.
+   *
+   * @return The bytes hashed before the nonce.
+   */
+  byte[] hashPrefix() {
+    if (this.isBatch()) {
+      byte[] root = this.merkleRoot.getBytes();
+      byte[] prev = this.getPrevHash().getBytes();
+      return ByteBuffer
+          .allocate(2 * Integer.BYTES + root.length + prev.length)
+          .putInt(this.getNum())
+          .put(root)
+          .putInt(this.batch.size())
+          .put(prev)
+          .array();
+    } // if
+    byte[] source = this.getTransaction().sourceBytes();
+    byte[] target = this.getTransaction().targetBytes();
+    byte[] prev = this.getPrevHash().getBytes();
+    return ByteBuffer
+        .allocate(2 * Integer.BYTES + source.length + target.length + prev.length)
+        .putInt(this.getNum())
+        .put(source)
+        .put(target)
+        .putInt(this.getTransaction().getAmount())
+        .put(prev)
+        .array();
+  } // hashPrefix()
+
   // +---------+-----------------------------------------------------
   // | Methods |
   // +---------+
@@ -146,7 +277,8 @@ public class Block {
   } // getNum()
 
   /**
-   * Get the transaction stored in this block.
+   * Get the transaction stored in this block. For a batch, that is
+   * the first transaction.
    *
    * @return the transaction.
    */
@@ -154,6 +286,34 @@ public class Block {
     return this.transaction;
   } // getTransaction()
 
+  /**
+   * Get all of the transactions stored in this block.
+   *
+   * @return the transactions, in order.
+   */
+  public List<Transaction> getTransactions() {
+    return this.isBatch() ? this.batch : List.of(this.transaction);
+  } // getTransactions()
+
+  /**
+   * Determine if this block holds a batch of transactions.
+   *
+   * @return true if the block holds a batch and false if it holds
+   *   a single transaction.
+   */
+  public boolean isBatch() {
+    return this.batch != null;
+  } // isBatch()
+
+  /**
+   * Get the Merkle root of this block's batch.
+   *
+   * @return the root, or null if the block holds a single transaction.
+   */
+  Hash getMerkleRoot() {
+    return this.merkleRoot;
+  } // getMerkleRoot()
+
   /**
    * Get the nonce of this block.
    *
@@ -187,6 +347,18 @@ public class Block {
    * @return a string representation of the block.
    */
   public String toString() {
+    if (this.isBatch()) {
+      return String.format(
+        "Block %d (Transactions: %s, "
+        + "Nonce: %d, "
+        + "prevHash: %s, hash: %s)",
+        this.getNum(),
+        this.getTransactions().toString(),
+        this.getNonce(),
+        this.getPrevHash().toString(),
+        this.getHash().toString()
+      );
+    } // if
     return String.format(
       "Block %d (Transaction: %s, "
       + "Nonce: %d, "
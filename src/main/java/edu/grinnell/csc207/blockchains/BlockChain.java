@@ -1,16 +1,60 @@
 package edu.grinnell.csc207.blockchains;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A full blockchain.
  *
+ * Chains are safe to share between threads. Changes to the chain take
+ * turns, while reads go on alongside one another: reads of blocks
+ * run without locking and retry if a change overlaps them, and other
+ * reads share a lock that changes hold only briefly.
+ *
+ * A chain hands new blocks to its store but only makes the store
+ * sync them to disk when it takes a snapshot, which it does every
+ * SNAPSHOT_INTERVAL blocks and whenever snapshot() is called. So
+ * after a crash, a chain kept in files comes back with at least the
+ * blocks up to its newest snapshot; later blocks survive only if the
+ * operating system wrote them out. Call snapshot() (or sync the store)
+ * after appending blocks that must not be lost.
+ *
+ * A chain that starts from a snapshot does not replay the blocks
+ * before it, so the first lookup by hash or by user history replays
+ * the whole chain. Other threads keep reading and appending while it
+ * does; only the lookup waits.
+ *
  * @author David William Stroud
  * @author Sheilla Muligande
  */
 public class BlockChain implements Iterable<Transaction> {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of names users() fetches at a time.
+   */
+  private static final int USER_PAGE = 256;
+
+  /**
+   * The number of blocks appended between snapshots of the ledger.
+   */
+  private static final int SNAPSHOT_INTERVAL = 1024;
+
   // +--------+------------------------------------------------------
   // | Fields |
   // +--------+
@@ -20,13 +64,68 @@ public class BlockChain implements Iterable<Transaction> {
    */
   private HashValidator validator;
   /**
-   * The most recent block in the chain.
+   * The object used to search for nonces.
+   */
+  private Miner miner;
+  /**
+   * The blocks in the chain, in order.
+   */
+  private BlockStore store;
+  /**
+   * The names of the users of the chain.
+   */
+  private UserDictionary users;
+  /**
+   * The balances after the last block in the chain.
+   */
+  private Ledger ledger;
+  /**
+   * The users paid by the blocks in the chain.
+   */
+  private UserRegistry registry;
+  /**
+   * The balances of each user over time.
    */
-  private BlockChainNode lastBlock;
+  private BalanceHistory history;
   /**
-   * The least recent block in the chain.
+   * The numbers of the blocks in the chain, by hash.
    */
-  private BlockChainNode firstBlock;
+  private HashIndex hashes;
+  /**
+   * Whether history and hashes cover the chain. A chain that starts
+   * from a snapshot builds them the first time they are needed.
+   */
+  private volatile boolean indexed;
+  /**
+   * Where to keep snapshots of the ledger, or null for nowhere.
+   */
+  private LedgerSnapshots snapshots;
+  /**
+   * The height of the chain at the last snapshot.
+   */
+  private int snapshotted;
+  /**
+   * The number of blocks at the start of the chain that check() has
+   * verified.
+   */
+  private int checked;
+  /**
+   * The balances after the verified blocks.
+   */
+  private Ledger checkedLedger;
+  /**
+   * The number of blocks ever removed from the chain.
+   */
+  private long removals;
+  /**
+   * Guards the fields above. Changes hold it exclusively; reads either
+   * share it or validate an optimistic stamp.
+   */
+  private StampedLock lock;
+  /**
+   * Lets only one check move the checkpoint at a time.
+   */
+  private ReentrantLock checkLock;
 
   // +--------------+------------------------------------------------
   // | Constructors |
@@ -39,18 +138,317 @@ public class BlockChain implements Iterable<Transaction> {
    *   The validator used to check elements.
    */
   public BlockChain(HashValidator check) {
-    this.validator = check;
-    this.firstBlock = new BlockChainNode(
-        new Block(0, new Transaction("", "", 0), new Hash(new byte[] {}), validator),
-        null
-    );
-    this.lastBlock = this.firstBlock;
+    this(check, new Miner());
   } // BlockChain(HashValidator)
 
+  /**
+   * Create a new blockchain using a validator to check elements and
+   * a miner to search for nonces.
+   *
+   * @param check
+   *   The validator used to check elements.
+   * @param miner1
+   *   The miner used to find nonces for new blocks.
+   */
+  public BlockChain(HashValidator check, Miner miner1) {
+    this(check, miner1, new SegmentedBlockStore());
+  } // BlockChain(HashValidator, Miner)
+
+  /**
+   * Create a blockchain whose blocks are kept in a store. If the store
+   * is empty, the chain starts with a new genesis block; otherwise it
+   * picks up the blocks already there. Stored blocks are not verified
+   * until the first call to check(). The chain never syncs the store;
+   * whoever made it must, to keep blocks through a crash.
+   *
+   * @param check
+   *   The validator used to check elements.
+   * @param miner1
+   *   The miner used to find nonces for new blocks.
+   * @param store1
+   *   The store that holds the blocks.
+   *
+   * @throws IllegalArgumentException
+   *   If the stored blocks cause a user to drop below 0 balance.
+   */
+  public BlockChain(HashValidator check, Miner miner1, BlockStore store1) {
+    this(check, miner1, store1, (LedgerSnapshots) null);
+  } // BlockChain(HashValidator, Miner, BlockStore)
+
+  /**
+   * Create a blockchain whose blocks are kept in a store and that
+   * takes snapshots of its balances and users every so often. If the
+   * store is not empty, the chain starts from the newest snapshot that
+   * fits the blocks and replays only the blocks after it.
+   *
+   * @param check
+   *   The validator used to check elements.
+   * @param miner1
+   *   The miner used to find nonces for new blocks.
+   * @param store1
+   *   The store that holds the blocks.
+   * @param snapshotDir
+   *   The directory that holds the snapshots.
+   *
+   * @throws IOException
+   *   If the snapshot directory cannot be created.
+   * @throws IllegalArgumentException
+   *   If the stored blocks cause a user to drop below 0 balance.
+   */
+  public BlockChain(HashValidator check, Miner miner1, BlockStore store1, Path snapshotDir)
+      throws IOException {
+    this(check, miner1, store1, new LedgerSnapshots(snapshotDir));
+  } // BlockChain(HashValidator, Miner, BlockStore, Path)
+
+  /**
+   * Create a blockchain whose blocks are kept in a store.
+   *
+   * @param check
+   *   The validator used to check elements.
+   * @param miner1
+   *   The miner used to find nonces for new blocks.
+   * @param store1
+   *   The store that holds the blocks.
+   * @param snapshots1
+   *   Where to keep snapshots of the ledger, or null for nowhere.
+   */
+  private BlockChain(HashValidator check, Miner miner1, BlockStore store1,
+      LedgerSnapshots snapshots1) {
+    this.validator = check;
+    this.miner = miner1;
+    this.store = store1;
+    if (store1 instanceof FileBlockStore file) {
+      this.users = file.users();
+    } else if (store1 instanceof ColumnarBlockStore columnar) {
+      this.users = columnar.users();
+    } else {
+      this.users = new UserDictionary();
+    } // if/else
+    this.ledger = new Ledger(this.users);
+    this.registry = new UserRegistry(this.users);
+    this.history = new BalanceHistory(this.users);
+    this.hashes = new HashIndex();
+    this.indexed = true;
+    this.snapshots = snapshots1;
+    this.snapshotted = 0;
+    this.checked = 0;
+    this.checkedLedger = new Ledger(this.users);
+    this.lock = new StampedLock();
+    this.checkLock = new ReentrantLock();
+    if (this.store.size() == 0) {
+      Transaction none = this.users.transaction(UserDictionary.NOBODY, UserDictionary.NOBODY, 0);
+      Block genesis = this.miner.mine(0, none, new Hash(new byte[] {}), validator);
+      this.ledger.apply(genesis);
+      this.history.add(genesis, this.ledger);
+      this.hashes.add(genesis);
+      this.store.add(genesis);
+      return;
+    } // if
+
+    int start = 0;
+    LedgerSnapshots.Snapshot snap =
+        (this.snapshots == null) ? null : this.snapshots.newest(this.store, this.users);
+    if (snap != null) {
+      start = snap.height;
+      this.ledger = snap.ledger;
+      this.registry = snap.registry;
+      this.indexed = false;
+      this.snapshotted = start;
+      if (snap.verified) {
+        this.checked = start;
+        this.checkedLedger = new Ledger(this.users, snap.ledger.balances());
+      } // if
+    } // if
+    for (int i = start; i < this.store.size(); i++) {
+      Block blk = this.store.get(i);
+      this.ledger.apply(blk);
+      if (i > 0) {
+        this.registry.add(blk);
+      } // if
+      if (this.indexed) {
+        this.history.add(blk, this.ledger);
+        this.hashes.add(blk);
+      } // if
+    } // for
+  } // BlockChain(HashValidator, Miner, BlockStore, LedgerSnapshots)
+
   // +---------+-----------------------------------------------------
   // | Helpers |
   // +---------+
 
+  /**
+   * Find the first problem with one block other than its balances:
+   * (a) an incorrect previous hash field, (b) a hash that is incorrect
+   * for its contents, or (c) an invalid hash.
+   *
+   * @param n
+   *   The number of the block.
+   *
+   * @return a description of the problem, or null if there is none.
+   */
+  private String problem(int n) {
+    Block blk = this.store.get(n);
+    if (n > 0 && !blk.getPrevHash().equals(this.store.get(n - 1).getHash())) {
+      return "Block " + blk.getNum() + ": previous hash is inconsistent";
+    } // if
+    if (!blk.getHash().equals(blk.computeHash())) {
+      return "Block " + blk.getNum() + ": hash is inconsistent";
+    } // if
+    if (!this.validator.isValid(blk.getHash())) {
+      return "Block " + blk.getNum() + ": hash is invalid";
+    } // if
+    return null;
+  } // problem(int)
+
+  /**
+   * Get the most recent block in the chain. The caller must hold the
+   * lock or validate a stamp.
+   *
+   * @return the last block.
+   */
+  private Block lastBlock() {
+    return this.store.get(this.store.size() - 1);
+  } // lastBlock()
+
+  /**
+   * Get a copy of a transaction that shares the dictionary's copies of
+   * its names. The chain mines blocks around such copies, so that a
+   * store that keeps the blocks it is given (as the default store
+   * does) holds one copy of each name, however many blocks it is in.
+   *
+   * @param tx
+   *   The transaction.
+   *
+   * @return the copy.
+   */
+  private Transaction shareNames(Transaction tx) {
+    return this.users.transaction(this.users.id(tx.getSource()), this.users.id(tx.getTarget()),
+        tx.getAmount());
+  } // shareNames(Transaction)
+
+  /**
+   * Make sure history and hashes cover the chain, building them from
+   * the blocks if the chain started from a snapshot. The blocks are
+   * replayed without holding the lock, so other reads and appends go
+   * on meanwhile; only the blocks appended during the replay are added
+   * under the write lock. If a block is removed during the replay, it
+   * starts over. The caller must not hold the lock.
+   */
+  private void index() {
+    while (!this.indexed) {
+      long removals0 = this.optimistic(() -> this.removals);
+      Ledger replay = new Ledger(this.users);
+      BalanceHistory history1 = new BalanceHistory(this.users);
+      HashIndex hashes1 = new HashIndex();
+      int built = 0;
+      for (Block blk = this.getBlockSince(0, removals0); blk != null;
+          blk = this.getBlockSince(++built, removals0)) {
+        replay.apply(blk);
+        history1.add(blk, replay);
+        hashes1.add(blk);
+      } // for
+
+      long stamp = this.lock.writeLock();
+      try {
+        if (this.indexed || this.removals != removals0) {
+          continue;
+        } // if
+        for (; built < this.store.size(); built++) {
+          Block blk = this.store.get(built);
+          replay.apply(blk);
+          history1.add(blk, replay);
+          hashes1.add(blk);
+        } // for
+        this.history = history1;
+        this.hashes = hashes1;
+        this.indexed = true;
+      } finally {
+        this.lock.unlockWrite(stamp);
+      } // try-finally
+    } // while
+  } // index()
+
+  /**
+   * Encode a snapshot of the ledger. The caller must hold the lock and
+   * keep check() from running.
+   *
+   * @return the bytes of the snapshot.
+   */
+  private byte[] encodeSnapshot() {
+    int height = this.store.size();
+    this.snapshotted = height;
+    return LedgerSnapshots.encode(height, this.lastBlock().getHash(),
+        this.checked == height, this.ledger, this.registry);
+  } // encodeSnapshot()
+
+  /**
+   * Read from the chain without locking, unless a change overlaps the
+   * read, in which case read again with the lock shared. The reader
+   * must cope with fields that change under it, which is why we use
+   * this only for the block store.
+   *
+   * @param <T>
+   *   The type of value read.
+   * @param reader
+   *   What to read.
+   *
+   * @return the value read.
+   */
+  private <T> T optimistic(Supplier<T> reader) {
+    long stamp = this.lock.tryOptimisticRead();
+    if (stamp != 0) {
+      try {
+        T result = reader.get();
+        if (this.lock.validate(stamp)) {
+          return result;
+        } // if
+      } catch (RuntimeException ex) {
+        // A change overlapped the read; read again below.
+      } // try-catch
+    } // if
+    return this.shared(reader);
+  } // optimistic(Supplier<T>)
+
+  /**
+   * Read from the chain with the lock shared.
+   *
+   * @param <T>
+   *   The type of value read.
+   * @param reader
+   *   What to read.
+   *
+   * @return the value read.
+   */
+  private <T> T shared(Supplier<T> reader) {
+    long stamp = this.lock.readLock();
+    try {
+      return reader.get();
+    } finally {
+      this.lock.unlockRead(stamp);
+    } // try-finally
+  } // shared(Supplier<T>)
+
+  // +-----------------+---------------------------------------------
+  // | Package methods |
+  // +-----------------+
+
+  /**
+   * Get a block, unless a block has been removed since some point.
+   *
+   * @param n
+   *   The number of the block.
+   * @param removals1
+   *   The number of removals at that point.
+   *
+   * @return the block, or null if a block has been removed since or
+   *   there is no such block.
+   */
+  Block getBlockSince(int n, long removals1) {
+    return this.optimistic(() -> (this.removals == removals1 && n < this.store.size())
+        ? this.store.get(n)
+        : null);
+  } // getBlockSince(int, long)
+
   // +---------+-----------------------------------------------------
   // | Methods |
   // +---------+
@@ -65,23 +463,175 @@ public class BlockChain implements Iterable<Transaction> {
    * @return a new block with correct number, hashes, and such.
    */
   public Block mine(Transaction t) {
-    return new Block(
-      this.lastBlock.getValue().getNum() + 1,
-      t,
-      this.lastBlock.getValue().getHash(),
+    Block last = this.optimistic(this::lastBlock);
+    return this.miner.mine(
+      last.getNum() + 1,
+      this.shareNames(t),
+      last.getHash(),
       this.validator
     );
   } // mine(Transaction)
 
+  /**
+   * Mine for a new valid block for the end of the chain that holds a
+   * batch of transactions, returning that block.
+   *
+   * @param transactions
+   *   The transactions that go in the block, in order.
+   *
+   * @return a new block with correct number, hashes, and such.
+   */
+  public Block mine(List<Transaction> transactions) {
+    Block last = this.optimistic(this::lastBlock);
+    return this.miner.mine(
+      new Block(
+        last.getNum() + 1,
+        transactions.stream().map(this::shareNames).toList(),
+        last.getHash(),
+        0
+      ),
+      this.validator
+    );
+  } // mine(List<Transaction>)
+
+  /**
+   * Start mining a new block for the end of the chain without waiting
+   * for it. Cancelling the returned future stops the search.
+   *
+   * @param t
+   *   The transaction that goes in the block.
+   * @param executor
+   *   The executor that runs the mining workers.
+   *
+   * @return a future for the new block.
+   */
+  public CompletableFuture<Block> mineAsync(Transaction t, Executor executor) {
+    return this.mineAsync(t, executor, null, null);
+  } // mineAsync(Transaction, Executor)
+
+  /**
+   * Start mining a new block for the end of the chain without waiting
+   * for it. Cancelling the returned future stops the search.
+   *
+   * @param t
+   *   The transaction that goes in the block.
+   * @param executor
+   *   The executor that runs the mining workers.
+   * @param timeout
+   *   How long to search before failing with a TimeoutException, or
+   *   null for no limit.
+   * @param progress
+   *   What to tell about the progress of the search, or null.
+   *
+   * @return a future for the new block.
+   */
+  public CompletableFuture<Block> mineAsync(
+      Transaction t,
+      Executor executor,
+      Duration timeout,
+      MiningProgress progress
+  ) {
+    Block last = this.optimistic(this::lastBlock);
+    return this.miner.mineAsync(
+      last.getNum() + 1,
+      this.shareNames(t),
+      last.getHash(),
+      this.validator,
+      executor,
+      timeout,
+      progress
+    );
+  } // mineAsync(Transaction, Executor, Duration, MiningProgress)
+
   /**
    * Get the number of blocks curently in the chain.
    *
    * @return the number of blocks in the chain, including the initial block.
    */
   public int getSize() {
-    return this.lastBlock.getValue().getNum() + 1;
+    return this.optimistic(this.store::size);
   } // getSize()
 
+  /**
+   * Get one block in the chain.
+   *
+   * @param n
+   *   The number of the block, between 0 (inclusive) and getSize()
+   *   (exclusive).
+   *
+   * @return the block.
+   *
+   * @throws IndexOutOfBoundsException
+   *   If there is no such block.
+   */
+  public Block getBlock(int n) {
+    return this.optimistic(() -> this.store.get(n));
+  } // getBlock(int)
+
+  /**
+   * Find the block in the chain with some hash.
+   *
+   * @param hash
+   *   The hash of the block.
+   *
+   * @return the block, or null if no block in the chain has that hash.
+   *   The first call on a chain that started from a snapshot replays
+   *   the chain first.
+   */
+  public Block findByHash(Hash hash) {
+    this.index();
+    return this.shared(() -> {
+      int n = this.hashes.find(hash);
+      return (n < 0) ? null : this.store.get(n);
+    });
+  } // findByHash(Hash)
+
+  /**
+   * Determine if a block in the chain has some hash.
+   *
+   * @param hash
+   *   The hash to look for.
+   *
+   * @return true if a block has that hash and false otherwise. Like
+   *   findByHash, the first call may replay the chain.
+   */
+  public boolean contains(Hash hash) {
+    this.index();
+    return this.shared(() -> this.hashes.find(hash) >= 0);
+  } // contains(Hash)
+
+  /**
+   * Find the blocks in the chain whose hashes start with some hex
+   * digits, as in a short hash.
+   *
+   * @param prefix
+   *   The digits, in either case.
+   * @param limit
+   *   The most blocks to find. Use 2 to tell if a short hash is
+   *   ambiguous.
+   *
+   * @return the blocks, in order of their hashes. Like findByHash,
+   *   the first call may replay the chain.
+   *
+   * @throws IllegalArgumentException
+   *   If prefix is not made of at most 64 hex digits, or if limit is
+   *   negative.
+   */
+  public List<Block> findByHashPrefix(String prefix, int limit) {
+    if (limit < 0) {
+      throw new IllegalArgumentException("Cannot return a negative number of blocks");
+    } // if
+    this.index();
+    return this.shared(() -> {
+      int[] nums = this.hashes.findPrefix(prefix, limit);
+      Block[] found = new Block[nums.length];
+      for (int i = 0; i < nums.length; i++) {
+        found[i] = this.store.get(nums[i]);
+      } // for
+      return List.of(found);
+    });
+  } // findByHashPrefix(String, int)
+
   /**
    * Add a block to the end of the chain.
    *
@@ -89,16 +639,11 @@ public class BlockChain implements Iterable<Transaction> {
    *   The block to add to the end of the chain.
    *
    * @throws IllegalArgumentException if (a) the hash is not valid, (b)
-   *   the hash is not appropriate for the contents, or (c) the previous
-   *   hash is incorrect.
+   *   the hash is not appropriate for the contents, (c) the previous
+   *   hash is incorrect, or (d) a transaction has a negative amount or
+   *   takes a user's balance below 0.
    */
   public void append(Block blk) {
-    if (!blk.getPrevHash().equals(this.lastBlock.getValue().getHash())) {
-      throw new IllegalArgumentException(
-        "Previous hash of new block is not valid"
-      );
-    } // if
-
     if (!blk.getHash().equals(blk.computeHash())) {
       throw new IllegalArgumentException(
         "Current hash of new block is not consistent"
@@ -111,13 +656,50 @@ public class BlockChain implements Iterable<Transaction> {
       );
     } // if
 
-    if (this.firstBlock == null) {
-      this.firstBlock = new BlockChainNode(blk, null);
-    } // if
+    byte[] snapshot = null;
+    long stamp = this.lock.writeLock();
+    try {
+      if (!blk.getPrevHash().equals(this.lastBlock().getHash())) {
+        throw new IllegalArgumentException(
+          "Previous hash of new block is not valid"
+        );
+      } // if
 
-    BlockChainNode newNode = new BlockChainNode(blk, null);
-    this.lastBlock.setNext(newNode);
-    this.lastBlock = newNode;
+      this.ledger.apply(blk);
+      try {
+        this.store.add(blk);
+      } catch (RuntimeException e) {
+        this.ledger.revert(blk);
+        throw e;
+      } // try-catch
+      this.registry.add(blk);
+      if (this.indexed) {
+        this.history.add(blk, this.ledger);
+        this.hashes.add(blk);
+      } // if
+      if (this.snapshots != null
+          && this.store.size() - this.snapshotted >= SNAPSHOT_INTERVAL) {
+        snapshot = this.encodeSnapshot();
+      } // if
+    } finally {
+      this.lock.unlockWrite(stamp);
+    } // try-finally
+
+    if (snapshot != null) {
+      try {
+        long readStamp = this.lock.readLock();
+        try {
+          // A snapshot must never be on disk without its blocks.
+          this.store.sync();
+        } finally {
+          this.lock.unlockRead(readStamp);
+        } // try-finally
+        this.snapshots.write(blk.getNum() + 1, snapshot);
+      } catch (IOException e) {
+        // The block is in; a missed snapshot only makes the next start
+        // replay more blocks.
+      } // try-catch
+    } // if
   } // append()
 
   /**
@@ -128,28 +710,80 @@ public class BlockChain implements Iterable<Transaction> {
    *   is removed).
    */
   public boolean removeLast() {
-    // This method is awful, but the assignment said to use
-    // singly linked lists.
-    if (this.getSize() < 2) {
-      return false;
-    } // if
-    BlockChainNode curr = this.firstBlock;
-    while (curr.getValue().getNum() != this.getSize() - 2) {
-      curr = curr.getNext();
-    } // while
-    this.lastBlock = curr;
-    curr.setNext(null);
-    return true;
+    long stamp = this.lock.writeLock();
+    try {
+      if (this.store.size() < 2) {
+        return false;
+      } // if
+      Block last = this.lastBlock();
+      this.store.removeLast();
+      this.ledger.revert(last);
+      this.registry.remove(last);
+      if (this.indexed) {
+        this.history.remove(last);
+        this.hashes.remove(last);
+      } // if
+      this.snapshotted = Math.min(this.snapshotted, this.store.size());
+      if (this.checked > this.store.size()) {
+        this.checkedLedger.revert(last);
+        this.checked--;
+      } // if
+      this.removals++;
+      return true;
+    } finally {
+      this.lock.unlockWrite(stamp);
+    } // try-finally
   } // removeLast()
 
+  /**
+   * Get the last block in the chain. Unlike getBlock(getSize() - 1),
+   * this reads the size and the block together, so it works while
+   * other threads append and remove blocks.
+   *
+   * @return the last block in the chain.
+   */
+  public Block getLastBlock() {
+    return this.optimistic(this::lastBlock);
+  } // getLastBlock()
+
   /**
    * Get the hash of the last block in the chain.
    *
    * @return the hash of the last sblock in the chain.
    */
   public Hash getHash() {
-    return this.lastBlock.getValue().getHash();
-  } // getHash()BlockChainNode prev
+    return this.getLastBlock().getHash();
+  } // getHash()
+
+  /**
+   * Take a snapshot of the balances and users now, so that the next
+   * start need not replay any blocks. Chains also take one every so
+   * often as blocks are appended. Either way, the store is synced
+   * first, so every block so far will outlast a crash.
+   *
+   * @throws IOException
+   *   If the snapshot cannot be written.
+   * @throws IllegalStateException
+   *   If the chain was not given a snapshot directory.
+   */
+  public void snapshot() throws IOException {
+    if (this.snapshots == null) {
+      throw new IllegalStateException("This chain does not take snapshots");
+    } // if
+    byte[] data;
+    int height;
+    this.checkLock.lock();
+    long stamp = this.lock.readLock();
+    try {
+      height = this.store.size();
+      data = this.encodeSnapshot();
+      this.store.sync();
+    } finally {
+      this.lock.unlockRead(stamp);
+      this.checkLock.unlock();
+    } // try-finally
+    this.snapshots.write(height, data);
+  } // snapshot()
 
   /**
    * Determine if the blockchain is correct in that (a) the balances are
@@ -174,83 +808,151 @@ public class BlockChain implements Iterable<Transaction> {
    * previous hash field, (c) that every block has a hash that is correct
    * for its contents, and (d) that every block has a valid hash.
    *
+   * Blocks that an earlier call verified are trusted, so each call
+   * only checks the blocks appended since. Use checkAll to check every
+   * block again.
+   *
+   * Checks (b) through (d) do not depend on one another, so they run
+   * on all the blocks in parallel; the validator must therefore be safe
+   * to call from several threads at once. Only the balances are checked
+   * in order. Either way, the problem reported is the first one the
+   * blocks would reveal if checked one at a time.
+   *
+   * Other reads may go on during a check, but changes wait for it.
+   *
    * @throws Exception
    *   If things are wrong at any block.
    */
   public void check() throws Exception {
-    HashMap<String, Integer> balances = new HashMap<>();
-
-    Iterator<Block> iter = this.blocks();
-    Block prev = null;
-    while (iter.hasNext()) {
-      Block blk = iter.next();
-      Transaction tx = blk.getTransaction();
-      if (tx.getAmount() < 0) {
-        throw new Exception(
-          "Block "
-          + blk.getNum()
-          + ": tx amount below 0"
-        );
-      } // if
-      if (!tx.getSource().isEmpty()) {
-        int newAmount = balances.merge(tx.getSource(), -tx.getAmount(), (a, b) -> a + b);
-        if (newAmount < 0) {
-          throw new Exception(
-            "Block "
-            + blk.getNum()
-            + ": tx causes user '"
-            + tx.getSource()
-            + "' to drop below 0 balance"
-          );
-        } // if
-      } // if
-      balances.merge(tx.getTarget(), tx.getAmount(), (a, b) -> a + b);
-
-      if (prev != null && !blk.getPrevHash().equals(prev.getHash())) {
-        throw new Exception(
-          "Block "
-          + blk.getNum()
-          + ": previous hash is inconsistent"
-        );
-      } // if
+    this.checkLock.lock();
+    long stamp = this.lock.readLock();
+    try {
+      int size = this.store.size();
+      int bad = IntStream.range(this.checked, size)
+          .parallel()
+          .filter((i) -> this.problem(i) != null)
+          .findFirst()
+          .orElse(size);
 
-      if (!blk.getHash().equals(blk.computeHash())) {
-        throw new Exception(
-          "Block "
-          + blk.getNum()
-          + ": hash is inconsistent"
-        );
-      } // if
+      try {
+        while (this.checked < bad) {
+          this.checkedLedger.apply(this.store.get(this.checked));
+          this.checked++;
+        } // while
+        if (bad < size) {
+          this.checkedLedger.apply(this.store.get(bad));
+          this.checkedLedger.revert(this.store.get(bad));
+        } // if
+      } catch (IllegalArgumentException ex) {
+        throw new Exception(ex.getMessage());
+      } // try-catch
 
-      if (!this.validator.isValid(blk.getHash())) {
-        throw new Exception(
-          "Block "
-          + blk.getNum()
-          + ": hash is invalid"
-        );
+      if (bad < size) {
+        throw new Exception(this.problem(bad));
       } // if
-
-      prev = blk;
-    } // while
+    } finally {
+      this.lock.unlockRead(stamp);
+      this.checkLock.unlock();
+    } // try-finally
   } // check()
 
+  /**
+   * Determine if the blockchain is correct, as in check, without
+   * trusting any blocks that earlier calls verified.
+   *
+   * @throws Exception
+   *   If things are wrong at any block.
+   */
+  public void checkAll() throws Exception {
+    this.checkLock.lock();
+    try {
+      long stamp = this.lock.writeLock();
+      try {
+        this.checked = 0;
+        this.checkedLedger = new Ledger(this.users);
+      } finally {
+        this.lock.unlockWrite(stamp);
+      } // try-finally
+      this.check();
+    } finally {
+      this.checkLock.unlock();
+    } // try-finally
+  } // checkAll()
+
   /**
    * Return an iterator of all the people who participated in the
-   * system.
+   * system, in alphabetical order.
    *
    * @return an iterator of all the people in the system.
    */
   public Iterator<String> users() {
-    HashSet<String> users = new HashSet<>();
-    for (Transaction tx : this) {
-      if (!tx.getTarget().isEmpty()) {
-        users.add(tx.getTarget());
-      } // if
-    } // for
-
-    return users.iterator();
+    return this.users(null);
   } // users()
 
+  /**
+   * Return an iterator of the people who participated in the system
+   * and whose names come after some name, in alphabetical order. To
+   * list users a page at a time, pass the last name of one page to get
+   * the next.
+   *
+   * The iterator fetches a page of names at a time, so it does not
+   * hold up changes to the chain, but it may miss names added or see
+   * names removed while it runs.
+   *
+   * @param after
+   *   The name to start after, or null to start at the beginning. It
+   *   need not be a user.
+   *
+   * @return an iterator of the people in the system after that name.
+   */
+  public Iterator<String> users(String after) {
+    return new Iterator<String>() {
+      private List<String> page = List.of();
+      private int next = 0;
+      private String last = after;
+      private boolean done = false;
+
+      public boolean hasNext() {
+        if (this.next == this.page.size() && !this.done) {
+          this.page = BlockChain.this.shared(
+              () -> BlockChain.this.registry.page(this.last, USER_PAGE));
+          this.next = 0;
+          this.done = this.page.size() < USER_PAGE;
+        } // if
+        return this.next < this.page.size();
+      } // hasNext()
+
+      public String next() {
+        if (!this.hasNext()) {
+          throw new NoSuchElementException();
+        } // if
+        this.last = this.page.get(this.next++);
+        return this.last;
+      } // next()
+    };
+  } // users(String)
+
+  /**
+   * Determine how many people participated in the system.
+   *
+   * @return the number of people in the system.
+   */
+  public int userCount() {
+    return this.shared(this.registry::size);
+  } // userCount()
+
+  /**
+   * Determine if someone participated in the system.
+   *
+   * @param user
+   *   The person to look for.
+   *
+   * @return true if the person is in the system and false otherwise.
+   */
+  public boolean containsUser(String user) {
+    return this.shared(() -> this.registry.contains(user));
+  } // containsUser(String)
+
   /**
    * Find one user's balance.
    *
@@ -260,40 +962,142 @@ public class BlockChain implements Iterable<Transaction> {
    * @return that user's balance (or 0, if the user is not in the system).
    */
   public int balance(String user) {
-    int current = 0;
+    return this.shared(() -> this.ledger.balance(user));
+  } // balance()
 
-    for (Transaction tx : this) {
-      if (tx.getTarget().equals(user)) {
-        current += tx.getAmount();
-      } // if
-      if (tx.getSource().equals(user)) {
-        current -= tx.getAmount();
+  /**
+   * Find one user's balance as of some block.
+   *
+   * @param user
+   *   The user whose balance we want to find.
+   * @param n
+   *   The number of the block, between 0 (inclusive) and getSize()
+   *   (exclusive).
+   *
+   * @return that user's balance just after that block (or 0, if the
+   *   user had no transactions by then). The first call on a chain
+   *   that started from a snapshot replays the chain to build the
+   *   history of every user.
+   *
+   * @throws IndexOutOfBoundsException
+   *   If there is no such block.
+   */
+  public int balance(String user, int n) {
+    this.index();
+    return this.shared(() -> {
+      if (n < 0 || n >= this.store.size()) {
+        throw new IndexOutOfBoundsException("No block " + n);
       } // if
-    } // for
+      return this.history.balance(user, n);
+    });
+  } // balance(String, int)
 
-    return current;
-  } // balance()
+  /**
+   * Determine how many blocks have transactions from or to a user.
+   *
+   * @param user
+   *   The user.
+   *
+   * @return the number of blocks in that user's history. Like
+   *   balance(String, int), the first call may replay the chain.
+   */
+  public int historySize(String user) {
+    this.index();
+    return this.shared(() -> this.history.count(user));
+  } // historySize(String)
+
+  /**
+   * Get one page of the blocks with transactions from or to a user.
+   * To get the next page, call again with from one more than the
+   * number of the last block returned. Blocks that hold batches may
+   * also hold transactions that do not involve the user.
+   *
+   * @param user
+   *   The user.
+   * @param from
+   *   The lowest block number to include.
+   * @param limit
+   *   The most blocks to return.
+   *
+   * @return the blocks, in order. Like balance(String, int), the
+   *   first call may replay the chain.
+   *
+   * @throws IllegalArgumentException
+   *   If limit is negative.
+   */
+  public List<Block> history(String user, int from, int limit) {
+    if (limit < 0) {
+      throw new IllegalArgumentException("Cannot return a negative number of blocks");
+    } // if
+    this.index();
+    return this.shared(() -> {
+      int[] nums = this.history.blocks(user, from, limit);
+      Block[] page = new Block[nums.length];
+      for (int i = 0; i < nums.length; i++) {
+        page[i] = this.store.get(nums[i]);
+      } // for
+      return List.of(page);
+    });
+  } // history(String, int, int)
 
   /**
    * Get an interator for all the blocks in the chain.
    *
+   * The iterator covers the blocks in the chain when it was created
+   * and ignores blocks appended later, without copying anything. If
+   * blocks are removed while it runs, it stops early rather than yield
+   * a block that does not follow the one before, so the blocks it
+   * yields always form a prefix of a chain.
+   *
    * @return an iterator for all the blocks in the chain.
    */
   public Iterator<Block> blocks() {
-    return new Iterator<Block>() {
-      private BlockChainNode curr = BlockChain.this.firstBlock;
+    return this.blocks(false);
+  } // blocks()
 
-      public boolean hasNext() {
-        return this.curr != null;
-      } // hasNext()
+  /**
+   * Get an interator for all the blocks in the chain, as in blocks(),
+   * that may fail as soon as any block is removed.
+   *
+   * @param failFast
+   *   True to throw a ConcurrentModificationException if a block is
+   *   removed from the chain during the iteration, or false to stop
+   *   early only if blocks the iterator has not reached yet change.
+   *
+   * @return an iterator for all the blocks in the chain.
+   */
+  public Iterator<Block> blocks(boolean failFast) {
+    return this.optimistic(() -> new Blocks(this.store.size(), this.removals, failFast));
+  } // blocks(boolean)
 
-      public Block next() {
-        Block thisBlock = this.curr.getValue();
-        this.curr = this.curr.getNext();
-        return thisBlock;
-      } // next()
-    };
-  } // blocks()
+  /**
+   * Get a stream of all the blocks in the chain, including the initial
+   * block. The stream splits evenly, so it works well in parallel.
+   *
+   * Like blocks(), the stream covers the blocks in the chain when it
+   * was created. If a block is removed while it runs, it stops rather
+   * than yield blocks from a different chain; a parallel stream may
+   * then have yielded some later blocks but not all earlier ones.
+   *
+   * @return a stream of the blocks, in order.
+   */
+  public Stream<Block> blockStream() {
+    return StreamSupport.stream(this.optimistic(
+        () -> new BlockSpliterator(this, 0, this.store.size(), this.removals)), false);
+  } // blockStream()
+
+  /**
+   * Get a stream of all the transactions in the chain. The stream
+   * splits evenly by block, so it works well in parallel. It stops
+   * early, as in blockStream(), if a block is removed while it runs.
+   *
+   * @return a stream of the transactions, in order.
+   */
+  public Stream<Transaction> transactionStream() {
+    return StreamSupport.stream(this.optimistic(
+        () -> new BlockSpliterator(this, 1, this.store.size(), this.removals)), false)
+        .flatMap((blk) -> blk.getTransactions().stream());
+  } // transactionStream()
 
   /**
    * Get an interator for all the transactions in the chain.
@@ -304,14 +1108,160 @@ public class BlockChain implements Iterable<Transaction> {
     Iterator<Block> inner = BlockChain.this.blocks();
     inner.next();
     return new Iterator<Transaction>() {
+      private Iterator<Transaction> current = List.<Transaction>of().iterator();
+
       public boolean hasNext() {
-        return inner.hasNext();
+        while (!this.current.hasNext() && inner.hasNext()) {
+          this.current = inner.next().getTransactions().iterator();
+        } // while
+        return this.current.hasNext();
       } // hasNext()
 
       public Transaction next() {
-        return inner.next().getTransaction();
+        if (!this.hasNext()) {
+          throw new NoSuchElementException();
+        } // if
+        return this.current.next();
       } // next()
     };
   } // iterator()
 
+  // +---------------+-----------------------------------------------
+  // | Inner classes |
+  // +---------------+
+
+  /**
+   * A block and the number of removals, read together.
+   */
+  private static class BlockRead {
+    /**
+     * The block, or null if there was none.
+     */
+    private Block block;
+
+    /**
+     * The number of removals.
+     */
+    private long removals;
+
+    /**
+     * Record a read.
+     *
+     * @param block1
+     *   The block, or null if there was none.
+     * @param removals1
+     *   The number of removals.
+     */
+    BlockRead(Block block1, long removals1) {
+      this.block = block1;
+      this.removals = removals1;
+    } // BlockRead(Block, long)
+  } // class BlockRead
+
+  /**
+   * Iterators over the blocks in a chain up to some height.
+   */
+  private class Blocks implements Iterator<Block> {
+    /**
+     * The index of the next block.
+     */
+    private int next;
+
+    /**
+     * The index just past the last block to yield.
+     */
+    private int end;
+
+    /**
+     * The number of removals when the iterator was created.
+     */
+    private long removals;
+
+    /**
+     * The number of removals when we last read a block.
+     */
+    private long seen;
+
+    /**
+     * Whether to fail on any removal.
+     */
+    private boolean failFast;
+
+    /**
+     * The last block yielded, or null.
+     */
+    private Block prev;
+
+    /**
+     * The next block to yield, if we have read it already, or null.
+     */
+    private Block pending;
+
+    /**
+     * Create an iterator.
+     *
+     * @param end1
+     *   The number of blocks to cover.
+     * @param removals1
+     *   The number of removals so far.
+     * @param failFast1
+     *   Whether to fail on any removal.
+     */
+    Blocks(int end1, long removals1, boolean failFast1) {
+      this.next = 0;
+      this.end = end1;
+      this.removals = removals1;
+      this.failFast = failFast1;
+    } // Blocks(int, long, boolean)
+
+    /**
+     * Determine if there is another block.
+     *
+     * @return true if there is another block and false otherwise.
+     *
+     * @throws ConcurrentModificationException
+     *   If the iterator is fail-fast and a block has been removed.
+     */
+    public boolean hasNext() {
+      if (this.pending != null) {
+        return true;
+      } // if
+      if (this.next >= this.end) {
+        return false;
+      } // if
+      int index = this.next;
+      BlockRead read = BlockChain.this.optimistic(() -> new BlockRead(
+          (index < BlockChain.this.store.size()) ? BlockChain.this.store.get(index) : null,
+          BlockChain.this.removals));
+      Block blk = read.block;
+      this.seen = read.removals;
+      if (this.failFast && this.seen != this.removals) {
+        throw new ConcurrentModificationException("A block was removed from the chain");
+      } // if
+      if (blk == null || (this.prev != null && !blk.getPrevHash().equals(this.prev.getHash()))) {
+        this.end = this.next;
+        return false;
+      } // if
+      this.pending = blk;
+      return true;
+    } // hasNext()
+
+    /**
+     * Get the next block.
+     *
+     * @return the next block.
+     *
+     * @throws NoSuchElementException
+     *   If there are no more blocks.
+     */
+    public Block next() {
+      if (!this.hasNext()) {
+        throw new NoSuchElementException();
+      } // if
+      this.prev = this.pending;
+      this.pending = null;
+      this.next++;
+      return this.prev;
+    } // next()
+  } // class Blocks
 } // class BlockChain
@@ -0,0 +1,429 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact binary format for blocks, transactions, and hashes, read
+ * from and written to byte buffers at their positions.
+ *
+ * Block numbers and lengths are unsigned varints (seven bits a byte,
+ * low bits first, with the top bit set on every byte but the last).
+ * Amounts and nonces may be negative, so they are zigzagged first,
+ * which keeps small negative numbers short too. A name is its length
+ * followed by its UTF-8 bytes. A hash is its length followed by its
+ * raw bytes. A block starts with the version of the format and then
+ * holds, in order, its number, its nonce, a byte of flags (1 for a
+ * batch), its previous hash, its hash, and then either its single
+ * transaction or its Merkle root, the number of transactions, and
+ * the transactions.
+ *
+ * Decoding trusts the stored hashes rather than recomputing them;
+ * use BlockChain.check to verify blocks that came from elsewhere.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+public class BlockCodec {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The version of the format that this class writes.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * The flag for a block that holds a batch.
+   */
+  private static final int BATCH = 1;
+
+  /**
+   * The number of bytes in a hash that we read without an array.
+   */
+  private static final int WORD_HASH_BYTES = 32;
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Turn a signed number into an unsigned one that is small when the
+   * signed one is near 0.
+   *
+   * @param n
+   *   The signed number.
+   *
+   * @return the zigzagged number.
+   */
+  private static long zigzag(long n) {
+    return (n << 1) ^ (n >> (Long.SIZE - 1));
+  } // zigzag(long)
+
+  /**
+   * Undo zigzag.
+   *
+   * @param n
+   *   The zigzagged number.
+   *
+   * @return the signed number.
+   */
+  private static long unzigzag(long n) {
+    return (n >>> 1) ^ -(n & 1);
+  } // unzigzag(long)
+
+  /**
+   * Read a length, making sure that the buffer holds that many bytes.
+   *
+   * @param buf
+   *   The buffer.
+   *
+   * @return the length.
+   *
+   * @throws IllegalArgumentException
+   *   If the length is out of range.
+   * @throws BufferUnderflowException
+   *   If the length is larger than what is left in the buffer.
+   */
+  private static int readLength(ByteBuffer buf) {
+    long length = readVarLong(buf);
+    if (length < 0 || length > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Length " + length + " is out of range");
+    } // if
+    if (length > buf.remaining()) {
+      throw new BufferUnderflowException();
+    } // if
+    return (int) length;
+  } // readLength(ByteBuffer)
+
+  /**
+   * Read a name.
+   *
+   * @param buf
+   *   The buffer.
+   *
+   * @return the UTF-8 bytes of the name.
+   */
+  private static byte[] readName(ByteBuffer buf) {
+    byte[] name = new byte[readLength(buf)];
+    buf.get(name);
+    return name;
+  } // readName(ByteBuffer)
+
+  /**
+   * Read a name and look it up in a dictionary.
+   *
+   * @param buf
+   *   The buffer.
+   * @param users
+   *   The dictionary, which gets the name if it is new.
+   *
+   * @return the ID of the name.
+   */
+  private static int readName(ByteBuffer buf, UserDictionary users) {
+    int length = readLength(buf);
+    int id = users.id(buf.slice(buf.position(), length));
+    buf.position(buf.position() + length);
+    return id;
+  } // readName(ByteBuffer, UserDictionary)
+
+  /**
+   * Read the amount of a transaction.
+   *
+   * @param buf
+   *   The buffer.
+   *
+   * @return the amount.
+   */
+  private static int readAmount(ByteBuffer buf) {
+    long amount = unzigzag(readVarLong(buf));
+    if (amount != (int) amount) {
+      throw new IllegalArgumentException("Amount " + amount + " is out of range");
+    } // if
+    return (int) amount;
+  } // readAmount(ByteBuffer)
+
+  // +-----------------+---------------------------------------------
+  // | Package methods |
+  // +-----------------+
+
+  /**
+   * Read a transaction whose names are in a dictionary. Names the
+   * dictionary already has are not decoded, and the transaction shares
+   * the dictionary's copies of them.
+   *
+   * @param buf
+   *   The buffer.
+   * @param users
+   *   The dictionary, which gets any names that are new.
+   *
+   * @return the transaction.
+   *
+   * @throws IllegalArgumentException
+   *   If the buffer does not hold a transaction.
+   * @throws BufferUnderflowException
+   *   If the buffer ends in the middle of the transaction.
+   */
+  static Transaction readTransaction(ByteBuffer buf, UserDictionary users) {
+    int amount = readAmount(buf);
+    int source = readName(buf, users);
+    int target = readName(buf, users);
+    return users.transaction(source, target, amount);
+  } // readTransaction(ByteBuffer, UserDictionary)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Determine how many bytes a number takes as a varint.
+   *
+   * @param n
+   *   The number, read as unsigned.
+   *
+   * @return the number of bytes.
+   */
+  public static int varLongSize(long n) {
+    return Math.max(1, (Long.SIZE - Long.numberOfLeadingZeros(n) + 6) / 7);
+  } // varLongSize(long)
+
+  /**
+   * Write a number as a varint.
+   *
+   * @param buf
+   *   The buffer.
+   * @param n
+   *   The number, read as unsigned.
+   */
+  public static void writeVarLong(ByteBuffer buf, long n) {
+    while ((n & ~0x7FL) != 0) {
+      buf.put((byte) ((n & 0x7F) | 0x80));
+      n >>>= 7;
+    } // while
+    buf.put((byte) n);
+  } // writeVarLong(ByteBuffer, long)
+
+  /**
+   * Read a varint.
+   *
+   * @param buf
+   *   The buffer.
+   *
+   * @return the number, as unsigned.
+   *
+   * @throws IllegalArgumentException
+   *   If the varint runs past ten bytes, or its tenth byte holds more
+   *   than the last bit of a long.
+   * @throws BufferUnderflowException
+   *   If the buffer ends in the middle of the varint.
+   */
+  public static long readVarLong(ByteBuffer buf) {
+    long n = 0;
+    for (int shift = 0; shift < Long.SIZE; shift += 7) {
+      byte b = buf.get();
+      if (shift == Long.SIZE - 1 && (b & 0x7F) > 1) {
+        throw new IllegalArgumentException("Varint is too large for a long");
+      } // if
+      n |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return n;
+      } // if
+    } // for
+    throw new IllegalArgumentException("Varint is too long");
+  } // readVarLong(ByteBuffer)
+
+  /**
+   * Determine how many bytes a hash takes.
+   *
+   * @param hash
+   *   The hash.
+   *
+   * @return the number of bytes.
+   */
+  public static int hashSize(Hash hash) {
+    return varLongSize(hash.length()) + hash.length();
+  } // hashSize(Hash)
+
+  /**
+   * Write a hash.
+   *
+   * @param buf
+   *   The buffer.
+   * @param hash
+   *   The hash.
+   */
+  public static void writeHash(ByteBuffer buf, Hash hash) {
+    writeVarLong(buf, hash.length());
+    hash.writeTo(buf);
+  } // writeHash(ByteBuffer, Hash)
+
+  /**
+   * Read a hash.
+   *
+   * @param buf
+   *   The buffer.
+   *
+   * @return the hash.
+   */
+  public static Hash readHash(ByteBuffer buf) {
+    int length = readLength(buf);
+    if (length == WORD_HASH_BYTES) {
+      Hash hash = Hash.read(buf, buf.position());
+      buf.position(buf.position() + length);
+      return hash;
+    } // if
+    byte[] bytes = new byte[length];
+    buf.get(bytes);
+    return Hash.wrap(bytes);
+  } // readHash(ByteBuffer)
+
+  /**
+   * Determine how many bytes a transaction takes.
+   *
+   * @param tx
+   *   The transaction.
+   *
+   * @return the number of bytes.
+   */
+  public static int transactionSize(Transaction tx) {
+    int source = tx.sourceBytes().length;
+    int target = tx.targetBytes().length;
+    return varLongSize(zigzag(tx.getAmount()))
+        + varLongSize(source) + source
+        + varLongSize(target) + target;
+  } // transactionSize(Transaction)
+
+  /**
+   * Write a transaction.
+   *
+   * @param buf
+   *   The buffer.
+   * @param tx
+   *   The transaction.
+   */
+  public static void writeTransaction(ByteBuffer buf, Transaction tx) {
+    writeVarLong(buf, zigzag(tx.getAmount()));
+    writeVarLong(buf, tx.sourceBytes().length);
+    buf.put(tx.sourceBytes());
+    writeVarLong(buf, tx.targetBytes().length);
+    buf.put(tx.targetBytes());
+  } // writeTransaction(ByteBuffer, Transaction)
+
+  /**
+   * Read a transaction. The transaction gets new copies of its names.
+   *
+   * @param buf
+   *   The buffer.
+   *
+   * @return the transaction.
+   *
+   * @throws IllegalArgumentException
+   *   If the buffer does not hold a transaction.
+   * @throws BufferUnderflowException
+   *   If the buffer ends in the middle of the transaction.
+   */
+  public static Transaction readTransaction(ByteBuffer buf) {
+    int amount = readAmount(buf);
+    byte[] source = readName(buf);
+    byte[] target = readName(buf);
+    return new Transaction(new String(source, StandardCharsets.UTF_8), source,
+        new String(target, StandardCharsets.UTF_8), target, amount);
+  } // readTransaction(ByteBuffer)
+
+  /**
+   * Determine how many bytes a block takes.
+   *
+   * @param blk
+   *   The block.
+   *
+   * @return the number of bytes.
+   */
+  public static int blockSize(Block blk) {
+    int size = varLongSize(VERSION)
+        + varLongSize(blk.getNum())
+        + varLongSize(zigzag(blk.getNonce()))
+        + 1
+        + hashSize(blk.getPrevHash())
+        + hashSize(blk.getHash());
+    if (blk.isBatch()) {
+      size += hashSize(blk.getMerkleRoot()) + varLongSize(blk.getTransactions().size());
+    } // if
+    for (Transaction tx : blk.getTransactions()) {
+      size += transactionSize(tx);
+    } // for
+    return size;
+  } // blockSize(Block)
+
+  /**
+   * Write a block.
+   *
+   * @param buf
+   *   The buffer, which needs blockSize(blk) bytes left.
+   * @param blk
+   *   The block.
+   */
+  public static void writeBlock(ByteBuffer buf, Block blk) {
+    writeVarLong(buf, VERSION);
+    writeVarLong(buf, blk.getNum());
+    writeVarLong(buf, zigzag(blk.getNonce()));
+    buf.put((byte) (blk.isBatch() ? BATCH : 0));
+    writeHash(buf, blk.getPrevHash());
+    writeHash(buf, blk.getHash());
+    if (blk.isBatch()) {
+      writeHash(buf, blk.getMerkleRoot());
+      writeVarLong(buf, blk.getTransactions().size());
+    } // if
+    for (Transaction tx : blk.getTransactions()) {
+      writeTransaction(buf, tx);
+    } // for
+  } // writeBlock(ByteBuffer, Block)
+
+  /**
+   * Read a block.
+   *
+   * @param buf
+   *   The buffer.
+   *
+   * @return the block.
+   *
+   * @throws IllegalArgumentException
+   *   If the buffer does not hold a block in a version of the format
+   *   that this class reads.
+   * @throws BufferUnderflowException
+   *   If the buffer ends in the middle of the block.
+   */
+  public static Block readBlock(ByteBuffer buf) {
+    long version = readVarLong(buf);
+    if (version != VERSION) {
+      throw new IllegalArgumentException("Unknown block format version " + version);
+    } // if
+    long num = readVarLong(buf);
+    if (num < 0 || num > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Block number " + num + " is out of range");
+    } // if
+    long nonce = unzigzag(readVarLong(buf));
+    boolean batch = (buf.get() & BATCH) != 0;
+    Hash prev = readHash(buf);
+    Hash hash = readHash(buf);
+    Hash root = null;
+    int count = 1;
+    if (batch) {
+      root = readHash(buf);
+      long n = readVarLong(buf);
+      // Each transaction takes at least three bytes.
+      if (n < 1 || n > buf.remaining() / 3) {
+        throw new IllegalArgumentException("Bad number of transactions " + n);
+      } // if
+      count = (int) n;
+    } // if
+    List<Transaction> txs = new ArrayList<Transaction>(count);
+    for (int i = 0; i < count; i++) {
+      txs.add(readTransaction(buf));
+    } // for
+    return new Block((int) num, txs, root, prev, nonce, hash);
+  } // readBlock(ByteBuffer)
+} // class BlockCodec
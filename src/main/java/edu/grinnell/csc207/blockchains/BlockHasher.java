@@ -0,0 +1,262 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hashes blocks without allocating. A hasher keeps its own digest and
+ * scratch buffers and reuses them for every hash it computes.
+ *
+ * A hasher made for a template block hashes that block with many
+ * different nonces. When it is faster, it uses a BlockSha256 engine
+ * that has already hashed the block's prefix; otherwise, it feeds the
+ * JDK digest the prefix again for each attempt. Either way, an
+ * attempt allocates nothing: it writes into a scratch hash that is
+ * overwritten by the next attempt.
+ * A hasher is not thread-safe, so each mining thread needs its own,
+ * and each thread gets one of its own for Block.computeHash().
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+class BlockHasher {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of bytes in a SHA-256 digest.
+   */
+  static final int DIGEST_BYTES = 32;
+
+  /**
+   * One hasher per thread, for hashing whole blocks.
+   */
+  private static final ThreadLocal<BlockHasher> LOCAL =
+      ThreadLocal.withInitial(BlockHasher::new);
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The digest we reuse for every hash.
+   */
+  private MessageDigest md;
+  /**
+   * The buffer used to encode ints and longs.
+   */
+  private byte[] scratch;
+  /**
+   * The buffer that digests are written to.
+   */
+  private byte[] out;
+  /**
+   * A scratch hash that reads whatever is in out.
+   */
+  private ScratchHash view;
+  /**
+   * The prefix of the template block, or null if there is none.
+   */
+  private byte[] prefix;
+  /**
+   * The engine for the template block, or null if we use the JDK
+   * digest.
+   */
+  private BlockSha256 engine;
+  /**
+   * The last validator we were given, or null if there was none.
+   */
+  private HashValidator validator;
+  /**
+   * Whether that validator checks raw bytes itself.
+   */
+  private boolean takesBytes;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a hasher with no template block.
+   */
+  BlockHasher() {
+    this.md = newDigest();
+    this.scratch = new byte[Long.BYTES];
+    this.out = new byte[DIGEST_BYTES];
+    this.view = new ScratchHash(this.out);
+  } // BlockHasher()
+
+  /**
+   * Create a hasher for a template block.
+   *
+   * @param template The block to hash. Its nonce is ignored.
+   */
+  BlockHasher(Block template) {
+    this();
+    this.prefix = template.hashPrefix();
+    if (BlockSha256.beatsJdk(this.prefix.length)) {
+      this.engine = new BlockSha256(this.prefix);
+    } // if
+  } // BlockHasher(Block)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Create a new SHA-256 digest.
+   *
+   * @return the digest.
+   */
+  static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("sha-256");
+    } catch (NoSuchAlgorithmException err) {
+      // This should never happen; every JVM provides SHA-256.
+      throw new IllegalStateException("Cannot load hash algorithm", err);
+    } // try-catch
+  } // newDigest()
+
+  /**
+   * Get the hasher that belongs to the current thread.
+   *
+   * @return the hasher.
+   */
+  static BlockHasher local() {
+    return LOCAL.get();
+  } // local()
+
+  /**
+   * Feed an int to the digest, big-endian.
+   *
+   * @param i The int to feed.
+   */
+  private void updateInt(int i) {
+    for (int b = Integer.BYTES - 1; b >= 0; b--) {
+      this.scratch[b] = (byte) i;
+      i >>>= Byte.SIZE;
+    } // for
+    this.md.update(this.scratch, 0, Integer.BYTES);
+  } // updateInt(int)
+
+  /**
+   * Feed a long to the digest, big-endian.
+   *
+   * @param l The long to feed.
+   */
+  private void updateLong(long l) {
+    for (int b = Long.BYTES - 1; b >= 0; b--) {
+      this.scratch[b] = (byte) l;
+      l >>>= Byte.SIZE;
+    } // for
+    this.md.update(this.scratch, 0, Long.BYTES);
+  } // updateLong(long)
+
+  /**
+   * Determine if a validator overrides isValid(byte[], int, int). The
+   * answer for the last validator is remembered, so that a miner only
+   * asks once.
+   *
+   * @param validator The validator.
+   * @return true if it checks raw bytes itself and false if it only
+   *   checks a Hash.
+   */
+  private boolean takesBytes(HashValidator validator) {
+    if (validator != this.validator) {
+      try {
+        this.takesBytes = validator.getClass()
+            .getMethod("isValid", byte[].class, int.class, int.class)
+            .getDeclaringClass() != HashValidator.class;
+      } catch (NoSuchMethodException err) {
+        // This should never happen; every validator has the method.
+        throw new IllegalStateException(err);
+      } // try-catch
+      this.validator = validator;
+    } // if
+    return this.takesBytes;
+  } // takesBytes(HashValidator)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Compute the hash of the template block with a given nonce. The
+   * result is a scratch hash that the next call overwrites, so it
+   * must not be kept.
+   *
+   * @param nonce The nonce to use.
+   * @return the hash of the template block with that nonce.
+   */
+  Hash hash(long nonce) {
+    if (this.engine != null) {
+      this.engine.hash(nonce);
+      this.engine.write(this.out);
+    } else {
+      this.md.reset();
+      this.md.update(this.prefix);
+      this.updateLong(nonce);
+      try {
+        this.md.digest(this.out, 0, DIGEST_BYTES);
+      } catch (DigestException err) {
+        // This should never happen; out is always big enough.
+        throw new IllegalStateException(err);
+      } // try-catch
+    } // if
+    return this.view;
+  } // hash(long)
+
+  /**
+   * Determine if the template block is valid with a given nonce.
+   * Skips writing out the hash if the validator can already reject
+   * it from its first four bytes. A validator that only checks a Hash
+   * is handed the scratch hash, rather than one wrapped around the
+   * bytes for each attempt.
+   *
+   * @param nonce The nonce to use.
+   * @param validator The object used to determine if a hash is valid.
+   * @return true if the hash is valid and false otherwise.
+   */
+  boolean isValid(long nonce, HashValidator validator) {
+    if (this.engine == null) {
+      this.hash(nonce);
+    } else if (!validator.mayBeValid(this.engine.hash(nonce))) {
+      return false;
+    } else {
+      this.engine.write(this.out);
+    } // if
+    if (this.takesBytes(validator)) {
+      return validator.isValid(this.out, 0, DIGEST_BYTES);
+    } // if
+    return validator.isValid(this.view);
+  } // isValid(long, HashValidator)
+
+  /**
+   * Compute the hash of a block with a given nonce.
+   *
+   * @param blk The block to hash.
+   * @param nonce The nonce to use in place of the block's nonce.
+   * @return a new hash of the block with that nonce.
+   */
+  Hash hash(Block blk, long nonce) {
+    this.md.reset();
+    if (blk.isBatch()) {
+      this.updateInt(blk.getNum());
+      blk.getMerkleRoot().updateDigest(this.md);
+      this.updateInt(blk.getTransactions().size());
+      blk.getPrevHash().updateDigest(this.md);
+      this.updateLong(nonce);
+      return Hash.wrap(this.md.digest());
+    } // if
+    Transaction tx = blk.getTransaction();
+    this.updateInt(blk.getNum());
+    this.md.update(tx.sourceBytes());
+    this.md.update(tx.targetBytes());
+    this.updateInt(tx.getAmount());
+    blk.getPrevHash().updateDigest(this.md);
+    this.updateLong(nonce);
+    return Hash.wrap(this.md.digest());
+  } // hash(Block, long)
+} // class BlockHasher
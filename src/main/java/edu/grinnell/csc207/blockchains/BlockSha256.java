@@ -0,0 +1,384 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.PlatformManagedObject;
+
+/**
+ * SHA-256 for a fixed prefix followed by an 8-byte nonce, the layout
+ * we hash when mining a block.
+ *
+ * Every 64-byte chunk before the one holding the nonce is compressed
+ * once, when the engine is created. So are the rounds of the nonce's
+ * chunk that only read words in front of the nonce. Each nonce then
+ * costs the rest of one compression (two if the nonce or the padding
+ * spills into another chunk), no matter how long the prefix is.
+ *
+ * Where the JVM hashes with the processor's SHA instructions, the
+ * JDK digest is several times faster per chunk than this class, but
+ * it has to be fed the whole prefix for every nonce (copying its state
+ * after the prefix would cost an allocation per nonce), so the engine
+ * pays off only for long prefixes. Without the instructions, the
+ * engine is about as fast as the JDK digest for any prefix. See
+ * beatsJdk(int). BenchmarkSha256, in the tests, times both on a given
+ * machine.
+ *
+ * Every nonce runs all 64 rounds of its last compression: the first
+ * word of the digest depends on the last round, so there is no way to
+ * stop early for validators that look at the start of a hash. What
+ * hash() saves such validators is writing out the rest of the digest.
+ *
+ * An engine is not thread-safe; each mining thread needs its own.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+class BlockSha256 {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The round constants.
+   */
+  private static final int[] K = {
+    0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5,
+    0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+    0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3,
+    0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+    0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc,
+    0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+    0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7,
+    0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+    0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13,
+    0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+    0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3,
+    0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+    0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5,
+    0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+    0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208,
+    0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+  };
+
+  /**
+   * The initial hash value.
+   */
+  private static final int[] INITIAL = {
+    0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a,
+    0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+  };
+
+  /**
+   * The number of bytes in a chunk.
+   */
+  private static final int CHUNK_BYTES = 64;
+
+  /**
+   * The number of words in a chunk.
+   */
+  private static final int CHUNK_WORDS = 16;
+
+  /**
+   * The number of rounds in a compression.
+   */
+  private static final int ROUNDS = 64;
+
+  /**
+   * Whether the JDK digest uses the processor's SHA instructions.
+   */
+  private static final boolean JDK_INTRINSIC = detectIntrinsic();
+
+  /**
+   * The length of prefix from which the engine beats the JDK digest
+   * even when the JDK digest uses SHA instructions.
+   */
+  private static final int JDK_BREAK_EVEN = 384;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The hash value after every chunk before the nonce's chunk.
+   */
+  private int[] midstate;
+  /**
+   * The words of the remaining chunks, with zeros for the nonce.
+   */
+  private int[] template;
+  /**
+   * The words of the remaining chunks with the current nonce.
+   */
+  private int[] tail;
+  /**
+   * The number of remaining chunks (one or two).
+   */
+  private int tailChunks;
+  /**
+   * The offset of the nonce in the remaining chunks, in bytes.
+   */
+  private int nonceOffset;
+  /**
+   * The number of rounds of the nonce's chunk that come before the
+   * nonce.
+   */
+  private int fixedRounds;
+  /**
+   * The working variables after those rounds.
+   */
+  private int[] early;
+  /**
+   * The message schedule.
+   */
+  private int[] w;
+  /**
+   * The working variables.
+   */
+  private int[] vars;
+  /**
+   * The most recent digest.
+   */
+  private int[] digest;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create an engine for a prefix.
+   *
+   * @param prefix The bytes that come before the nonce.
+   */
+  BlockSha256(byte[] prefix) {
+    int length = prefix.length + Long.BYTES;
+    int chunks = chunks(length);
+    byte[] message = new byte[chunks * CHUNK_BYTES];
+    System.arraycopy(prefix, 0, message, 0, prefix.length);
+    message[length] = (byte) 0x80;
+    long bits = (long) length * Byte.SIZE;
+    for (int i = 0; i < Long.BYTES; i++) {
+      message[message.length - 1 - i] = (byte) (bits >>> (Byte.SIZE * i));
+    } // for
+
+    int[] words = new int[chunks * CHUNK_WORDS];
+    for (int i = 0; i < words.length; i++) {
+      words[i] = ((message[4 * i] & 0xFF) << 24)
+          | ((message[4 * i + 1] & 0xFF) << 16)
+          | ((message[4 * i + 2] & 0xFF) << 8)
+          | (message[4 * i + 3] & 0xFF);
+    } // for
+
+    this.w = new int[ROUNDS];
+    this.vars = new int[INITIAL.length];
+    this.digest = new int[INITIAL.length];
+
+    int fixedChunks = prefix.length / CHUNK_BYTES;
+    this.midstate = INITIAL.clone();
+    for (int c = 0; c < fixedChunks; c++) {
+      this.compress(this.midstate, words, c * CHUNK_WORDS);
+    } // for
+
+    this.tailChunks = chunks - fixedChunks;
+    this.template = new int[this.tailChunks * CHUNK_WORDS];
+    System.arraycopy(words, fixedChunks * CHUNK_WORDS, this.template, 0, this.template.length);
+    this.tail = this.template.clone();
+    this.nonceOffset = prefix.length - fixedChunks * CHUNK_BYTES;
+
+    this.fixedRounds = this.nonceOffset / Integer.BYTES;
+    System.arraycopy(this.template, 0, this.w, 0, CHUNK_WORDS);
+    this.early = this.midstate.clone();
+    rounds(this.early, this.w, 0, this.fixedRounds);
+  } // BlockSha256(byte[])
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Determine if the JDK digest uses the processor's SHA instructions.
+   * HotSpot turns UseSHA on when the processor has them (the flags for
+   * each algorithm are diagnostic, so the bean won't show them). The
+   * diagnostic bean is looked up by name, since other JVMs (and
+   * trimmed runtimes without jdk.management) don't have it.
+   *
+   * @return true if it does and false if it does not or we can't tell.
+   */
+  private static boolean detectIntrinsic() {
+    try {
+      Class<? extends PlatformManagedObject> type =
+          Class.forName("com.sun.management.HotSpotDiagnosticMXBean")
+              .asSubclass(PlatformManagedObject.class);
+      Object option = type.getMethod("getVMOption", String.class)
+          .invoke(ManagementFactory.getPlatformMXBean(type), "UseSHA");
+      Object value = Class.forName("com.sun.management.VMOption")
+          .getMethod("getValue")
+          .invoke(option);
+      return Boolean.parseBoolean((String) value);
+    } catch (ReflectiveOperationException | RuntimeException | LinkageError err) {
+      // Not HotSpot, or no such option; assume a plain Java digest.
+      return false;
+    } // try-catch
+  } // detectIntrinsic()
+
+  /**
+   * Count the chunks in a padded message.
+   *
+   * @param length The length of the message in bytes.
+   * @return the number of chunks.
+   */
+  private static int chunks(int length) {
+    return (length + 1 + Long.BYTES + CHUNK_BYTES - 1) / CHUNK_BYTES;
+  } // chunks(int)
+
+  /**
+   * Expand one chunk into the message schedule.
+   *
+   * @param words The words of the message.
+   * @param offset Where the chunk starts in words.
+   */
+  private void schedule(int[] words, int offset) {
+    System.arraycopy(words, offset, this.w, 0, CHUNK_WORDS);
+    for (int t = CHUNK_WORDS; t < ROUNDS; t++) {
+      int x = this.w[t - 15];
+      int y = this.w[t - 2];
+      int s0 = Integer.rotateRight(x, 7) ^ Integer.rotateRight(x, 18) ^ (x >>> 3);
+      int s1 = Integer.rotateRight(y, 17) ^ Integer.rotateRight(y, 19) ^ (y >>> 10);
+      this.w[t] = this.w[t - 16] + s0 + this.w[t - 7] + s1;
+    } // for
+  } // schedule(int[], int)
+
+  /**
+   * Run some rounds of the compression function.
+   *
+   * @param v The working variables, which are updated.
+   * @param w The message schedule.
+   * @param from The first round to run.
+   * @param to The round to stop before.
+   */
+  private static void rounds(int[] v, int[] w, int from, int to) {
+    int a = v[0];
+    int b = v[1];
+    int c = v[2];
+    int d = v[3];
+    int e = v[4];
+    int f = v[5];
+    int g = v[6];
+    int h = v[7];
+    for (int t = from; t < to; t++) {
+      int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11)
+          ^ Integer.rotateRight(e, 25);
+      int ch = (e & f) ^ (~e & g);
+      int t1 = h + s1 + ch + K[t] + w[t];
+      int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13)
+          ^ Integer.rotateRight(a, 22);
+      int maj = (a & b) ^ (a & c) ^ (b & c);
+      h = g;
+      g = f;
+      f = e;
+      e = d + t1;
+      d = c;
+      c = b;
+      b = a;
+      a = t1 + s0 + maj;
+    } // for
+    v[0] = a;
+    v[1] = b;
+    v[2] = c;
+    v[3] = d;
+    v[4] = e;
+    v[5] = f;
+    v[6] = g;
+    v[7] = h;
+  } // rounds(int[], int[], int, int)
+
+  /**
+   * Compress one chunk into a hash value.
+   *
+   * @param state The hash value, which is updated.
+   * @param words The words of the message.
+   * @param offset Where the chunk starts in words.
+   */
+  private void compress(int[] state, int[] words, int offset) {
+    this.schedule(words, offset);
+    System.arraycopy(state, 0, this.vars, 0, state.length);
+    rounds(this.vars, this.w, 0, ROUNDS);
+    for (int i = 0; i < state.length; i++) {
+      state[i] += this.vars[i];
+    } // for
+  } // compress(int[], int[], int)
+
+  /**
+   * Put a nonce into the tail, big-endian.
+   *
+   * @param nonce The nonce.
+   */
+  private void setNonce(long nonce) {
+    int first = this.nonceOffset / Integer.BYTES;
+    int last = (this.nonceOffset + Long.BYTES - 1) / Integer.BYTES;
+    for (int i = first; i <= last; i++) {
+      this.tail[i] = this.template[i];
+    } // for
+    for (int k = 0; k < Long.BYTES; k++) {
+      int pos = this.nonceOffset + k;
+      int b = (int) (nonce >>> (Byte.SIZE * (Long.BYTES - 1 - k))) & 0xFF;
+      this.tail[pos / Integer.BYTES] |= b << (Byte.SIZE * (3 - pos % Integer.BYTES));
+    } // for
+  } // setNonce(long)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Determine if an engine is likely to be at least as fast as the
+   * JDK digest fed the whole prefix for each nonce. With SHA
+   * instructions, BenchmarkSha256 measured the engine at about 500 ns
+   * per nonce, whatever the length of the prefix, and the JDK digest
+   * at about 140 ns for 20 bytes, 290 ns for 193, 440 ns for 400, and
+   * 890 ns for 1000; without them, both took about 450 ns or more.
+   *
+   * @param prefixBytes
+   *   The length of the prefix.
+   *
+   * @return true if the engine should be used and false otherwise.
+   */
+  static boolean beatsJdk(int prefixBytes) {
+    return !JDK_INTRINSIC || prefixBytes >= JDK_BREAK_EVEN;
+  } // beatsJdk(int)
+
+  /**
+   * Hash the prefix followed by a nonce. Use write() to get the
+   * rest of the digest; callers that can reject the hash from its
+   * first word need not.
+   *
+   * @param nonce The nonce.
+   * @return the first four bytes of the digest, big-endian.
+   */
+  int hash(long nonce) {
+    this.setNonce(nonce);
+    this.schedule(this.tail, 0);
+    System.arraycopy(this.early, 0, this.vars, 0, this.vars.length);
+    rounds(this.vars, this.w, this.fixedRounds, ROUNDS);
+    for (int i = 0; i < this.digest.length; i++) {
+      this.digest[i] = this.midstate[i] + this.vars[i];
+    } // for
+    if (this.tailChunks > 1) {
+      this.compress(this.digest, this.tail, CHUNK_WORDS);
+    } // if
+    return this.digest[0];
+  } // hash(long)
+
+  /**
+   * Write the most recent digest.
+   *
+   * @param out Where to write the 32 bytes of the digest.
+   */
+  void write(byte[] out) {
+    for (int i = 0; i < this.digest.length; i++) {
+      int word = this.digest[i];
+      out[4 * i] = (byte) (word >>> 24);
+      out[4 * i + 1] = (byte) (word >>> 16);
+      out[4 * i + 2] = (byte) (word >>> 8);
+      out[4 * i + 3] = (byte) word;
+    } // for
+  } // write(byte[])
+} // class BlockSha256
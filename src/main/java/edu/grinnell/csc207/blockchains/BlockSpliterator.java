@@ -0,0 +1,125 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A spliterator over a range of the blocks in a chain. It splits its
+ * range in half, so parallel streams get evenly sized pieces.
+ *
+ * It stops as soon as it finds that a block has been removed from the
+ * chain since it was created, since the blocks it has not reached yet
+ * may have changed. So it is not sized: it may yield fewer blocks than
+ * it first estimates.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+class BlockSpliterator implements Spliterator<Block> {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The chain that holds the blocks.
+   */
+  private BlockChain chain;
+
+  /**
+   * The index of the next block.
+   */
+  private int next;
+
+  /**
+   * The index just past the last block.
+   */
+  private int end;
+
+  /**
+   * The number of removals from the chain when we were created.
+   */
+  private long removals;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a spliterator over some blocks.
+   *
+   * @param chain1
+   *   The chain that holds the blocks.
+   * @param start
+   *   The index of the first block.
+   * @param end1
+   *   The index just past the last block.
+   * @param removals1
+   *   The number of removals from the chain so far.
+   */
+  BlockSpliterator(BlockChain chain1, int start, int end1, long removals1) {
+    this.chain = chain1;
+    this.next = start;
+    this.end = end1;
+    this.removals = removals1;
+  } // BlockSpliterator(BlockChain, int, int, long)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Pass the next block, if there is one, to an action.
+   *
+   * @param action
+   *   The action.
+   *
+   * @return true if there was a block and false otherwise.
+   */
+  public boolean tryAdvance(Consumer<? super Block> action) {
+    if (this.next >= this.end) {
+      return false;
+    } // if
+    Block blk = this.chain.getBlockSince(this.next, this.removals);
+    if (blk == null) {
+      this.end = this.next;
+      return false;
+    } // if
+    this.next++;
+    action.accept(blk);
+    return true;
+  } // tryAdvance(Consumer)
+
+  /**
+   * Split off the first half of the remaining blocks.
+   *
+   * @return a spliterator over the first half, or null if there are
+   *   too few blocks to split.
+   */
+  public Spliterator<Block> trySplit() {
+    int mid = (this.next + this.end) >>> 1;
+    if (mid <= this.next) {
+      return null;
+    } // if
+    BlockSpliterator first = new BlockSpliterator(this.chain, this.next, mid, this.removals);
+    this.next = mid;
+    return first;
+  } // trySplit()
+
+  /**
+   * Estimate how many blocks remain.
+   *
+   * @return the number of blocks, unless the spliterator stops early.
+   */
+  public long estimateSize() {
+    return this.end - this.next;
+  } // estimateSize()
+
+  /**
+   * Describe the blocks.
+   *
+   * @return the characteristics of this spliterator.
+   */
+  public int characteristics() {
+    return ORDERED | NONNULL;
+  } // characteristics()
+} // class BlockSpliterator
@@ -0,0 +1,60 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.IOException;
+
+/**
+ * Places to keep the blocks of a blockchain, in order. Blocks are
+ * only ever added to or removed from the end.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+public interface BlockStore {
+  /**
+   * Determine how many blocks are in the store.
+   *
+   * @return the number of blocks.
+   */
+  int size();
+
+  /**
+   * Get a block.
+   *
+   * @param index
+   *   The number of the block, between 0 (inclusive) and size()
+   *   (exclusive).
+   *
+   * @return the block.
+   *
+   * @throws IndexOutOfBoundsException
+   *   If there is no such block.
+   */
+  Block get(int index);
+
+  /**
+   * Add a block to the end of the store.
+   *
+   * @param blk
+   *   The block to add.
+   */
+  void add(Block blk);
+
+  /**
+   * Remove the last block from the store.
+   *
+   * @throws IllegalStateException
+   *   If the store is empty.
+   */
+  void removeLast();
+
+  /**
+   * Make sure every block added so far will outlast a crash. Stores
+   * kept in memory have nothing to do.
+   *
+   * @throws IOException
+   *   If the blocks cannot be written.
+   */
+  default void sync() throws IOException {
+  } // sync()
+
+} // interface BlockStore
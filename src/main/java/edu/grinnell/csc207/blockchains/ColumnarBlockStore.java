@@ -0,0 +1,376 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Blocks kept in memory as columns of primitives rather than as
+ * objects. Each block takes its nonce, the four words of its hash, and
+ * where its transactions start (its number is its index); each
+ * transaction takes
+ * its amount and the IDs of its source and target in the store's
+ * user dictionary. That comes to about 56 bytes for a block with one
+ * transaction, in a handful of arrays that the garbage collector scans
+ * without following a single reference.
+ *
+ * The previous hash of a block is almost always the hash of the block
+ * before it, so only the exceptions (such as that of the first block)
+ * are kept, as are the Merkle roots of the (rarer) batches, in sorted
+ * arrays by block index. Getting a block builds a short-lived Block
+ * from the columns, allocating only the block, its hashes, and its
+ * transactions (and, for a batch, their list).
+ *
+ * Only blocks with 32-byte hashes can be stored.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+public class ColumnarBlockStore implements BlockStore {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of longs in a hash.
+   */
+  private static final int HASH_LONGS = 4;
+
+  /**
+   * The number of blocks and transactions we start with room for.
+   */
+  private static final int INITIAL_CAPACITY = 1024;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of blocks in the store.
+   */
+  private int size;
+
+  /**
+   * The nonce of each block.
+   */
+  private long[] nonces;
+
+  /**
+   * The hash of each block, as four words, big-endian.
+   */
+  private long[] hashes;
+
+  /**
+   * The index of the first transaction of each block. The entry just
+   * past the last block is the number of transactions.
+   */
+  private int[] firstTransactions;
+
+  /**
+   * The amount of each transaction.
+   */
+  private int[] amounts;
+
+  /**
+   * The ID of the source of each transaction.
+   */
+  private int[] sources;
+
+  /**
+   * The ID of the target of each transaction.
+   */
+  private int[] targets;
+
+  /**
+   * The previous hashes of the blocks whose previous hash is not the
+   * hash of the block before.
+   */
+  private SparseHashes prevHashes;
+
+  /**
+   * The Merkle roots of the blocks that hold batches.
+   */
+  private SparseHashes roots;
+
+  /**
+   * The names of the sources and targets.
+   */
+  private UserDictionary users;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create an empty store.
+   */
+  public ColumnarBlockStore() {
+    this.size = 0;
+    this.nonces = new long[INITIAL_CAPACITY];
+    this.hashes = new long[HASH_LONGS * INITIAL_CAPACITY];
+    this.firstTransactions = new int[INITIAL_CAPACITY + 1];
+    this.amounts = new int[INITIAL_CAPACITY];
+    this.sources = new int[INITIAL_CAPACITY];
+    this.targets = new int[INITIAL_CAPACITY];
+    this.prevHashes = new SparseHashes();
+    this.roots = new SparseHashes();
+    this.users = new UserDictionary();
+  } // ColumnarBlockStore()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Get the hash of a block.
+   *
+   * @param index
+   *   The index of the block.
+   *
+   * @return the hash.
+   */
+  private Hash hashAt(int index) {
+    int w = HASH_LONGS * index;
+    return Hash.ofWords(this.hashes[w], this.hashes[w + 1], this.hashes[w + 2],
+        this.hashes[w + 3]);
+  } // hashAt(int)
+
+  /**
+   * Determine if a hash is the hash of some block.
+   *
+   * @param hash
+   *   The hash.
+   * @param index
+   *   The index of the block.
+   *
+   * @return true if it is and false otherwise.
+   */
+  private boolean isHashAt(Hash hash, int index) {
+    if (hash.length() != HASH_LONGS * Long.BYTES) {
+      return false;
+    } // if
+    for (int i = 0; i < HASH_LONGS; i++) {
+      if (hash.getLong(i) != this.hashes[HASH_LONGS * index + i]) {
+        return false;
+      } // if
+    } // for
+    return true;
+  } // isHashAt(Hash, int)
+
+  /**
+   * Get a transaction.
+   *
+   * @param t
+   *   The index of the transaction.
+   *
+   * @return the transaction.
+   */
+  private Transaction transactionAt(int t) {
+    return this.users.transaction(this.sources[t], this.targets[t], this.amounts[t]);
+  } // transactionAt(int)
+
+  /**
+   * Make room for one more block with some transactions.
+   *
+   * @param count
+   *   The number of transactions in the block.
+   */
+  private void reserve(int count) {
+    if (this.size == this.nonces.length) {
+      int capacity = 2 * this.size;
+      this.nonces = Arrays.copyOf(this.nonces, capacity);
+      this.hashes = Arrays.copyOf(this.hashes, HASH_LONGS * capacity);
+      this.firstTransactions = Arrays.copyOf(this.firstTransactions, capacity + 1);
+    } // if
+    int needed = this.firstTransactions[this.size] + count;
+    if (needed > this.amounts.length) {
+      int capacity = Math.max(needed, 2 * this.amounts.length);
+      this.amounts = Arrays.copyOf(this.amounts, capacity);
+      this.sources = Arrays.copyOf(this.sources, capacity);
+      this.targets = Arrays.copyOf(this.targets, capacity);
+    } // if
+  } // reserve(int)
+
+  // +-----------------+---------------------------------------------
+  // | Package methods |
+  // +-----------------+
+
+  /**
+   * Get the dictionary of the names of the sources and targets. A
+   * chain over the store shares it, so that the chain has one copy of
+   * each name.
+   *
+   * @return the dictionary.
+   */
+  UserDictionary users() {
+    return this.users;
+  } // users()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Determine how many blocks are in the store.
+   *
+   * @return the number of blocks.
+   */
+  public int size() {
+    return this.size;
+  } // size()
+
+  /**
+   * Get a block, building it from the columns.
+   *
+   * @param index
+   *   The number of the block, between 0 (inclusive) and size()
+   *   (exclusive).
+   *
+   * @return the block.
+   */
+  public Block get(int index) {
+    if (index < 0 || index >= this.size) {
+      throw new IndexOutOfBoundsException(
+        "No block " + index + " in a store of " + this.size
+      );
+    } // if
+    Hash prev = this.prevHashes.get(index);
+    if (prev == null) {
+      prev = this.hashAt(index - 1);
+    } // if
+    int first = this.firstTransactions[index];
+    Hash root = this.roots.get(index);
+    if (root == null) {
+      return new Block(index, this.transactionAt(first), prev, this.nonces[index],
+          this.hashAt(index));
+    } // if
+    Transaction[] txs = new Transaction[this.firstTransactions[index + 1] - first];
+    for (int i = 0; i < txs.length; i++) {
+      txs[i] = this.transactionAt(first + i);
+    } // for
+    return new Block(index, List.of(txs), root, prev, this.nonces[index], this.hashAt(index));
+  } // get(int)
+
+  /**
+   * Add a block to the end of the store.
+   *
+   * @param blk
+   *   The block to add.
+   *
+   * @throws IllegalArgumentException
+   *   If the block's hash is not 32 bytes long, or its number is not
+   *   the size of the store.
+   */
+  public void add(Block blk) {
+    Hash hash = blk.getHash();
+    if (hash.length() != HASH_LONGS * Long.BYTES) {
+      throw new IllegalArgumentException("Block " + blk.getNum() + ": hash is not 32 bytes");
+    } // if
+    if (blk.getNum() != this.size) {
+      throw new IllegalArgumentException(
+        "Block " + blk.getNum() + ": number is not " + this.size
+      );
+    } // if
+    int count = blk.getTransactions().size();
+    this.reserve(count);
+    int index = this.size;
+    this.nonces[index] = blk.getNonce();
+    for (int i = 0; i < HASH_LONGS; i++) {
+      this.hashes[HASH_LONGS * index + i] = hash.getLong(i);
+    } // for
+    if (index == 0 || !this.isHashAt(blk.getPrevHash(), index - 1)) {
+      this.prevHashes.put(index, blk.getPrevHash());
+    } // if
+    if (blk.isBatch()) {
+      this.roots.put(index, blk.getMerkleRoot());
+    } // if
+    int t = this.firstTransactions[index];
+    for (Transaction tx : blk.getTransactions()) {
+      this.amounts[t] = tx.getAmount();
+      this.sources[t] = this.users.id(tx.getSource());
+      this.targets[t] = this.users.id(tx.getTarget());
+      t++;
+    } // for
+    this.firstTransactions[index + 1] = t;
+    this.size++;
+  } // add(Block)
+
+  /**
+   * Remove the last block from the store. The columns keep their
+   * room, for the next block.
+   */
+  public void removeLast() {
+    if (this.size == 0) {
+      throw new IllegalStateException("Cannot remove from an empty store");
+    } // if
+    this.size--;
+    this.prevHashes.removeFrom(this.size);
+    this.roots.removeFrom(this.size);
+  } // removeLast()
+
+  // +---------------+-----------------------------------------------
+  // | Inner classes |
+  // +---------------+
+
+  /**
+   * A few hashes, by block index, in order of index. Hashes are added
+   * and removed at the end, as blocks are.
+   */
+  static class SparseHashes {
+    /**
+     * The index of each block that has a hash.
+     */
+    int[] indices = new int[4];
+
+    /**
+     * The hashes, in the same order.
+     */
+    Hash[] hashes = new Hash[4];
+
+    /**
+     * The number of hashes.
+     */
+    int size = 0;
+
+    /**
+     * Get the hash of a block.
+     *
+     * @param index
+     *   The index of the block.
+     *
+     * @return the hash, or null if the block has none.
+     */
+    Hash get(int index) {
+      int i = Arrays.binarySearch(this.indices, 0, this.size, index);
+      return (i < 0) ? null : this.hashes[i];
+    } // get(int)
+
+    /**
+     * Give a block, after every block that has a hash, a hash.
+     *
+     * @param index
+     *   The index of the block.
+     * @param hash
+     *   The hash.
+     */
+    void put(int index, Hash hash) {
+      if (this.size == this.indices.length) {
+        this.indices = Arrays.copyOf(this.indices, 2 * this.size);
+        this.hashes = Arrays.copyOf(this.hashes, 2 * this.size);
+      } // if
+      this.indices[this.size] = index;
+      this.hashes[this.size++] = hash;
+    } // put(int, Hash)
+
+    /**
+     * Forget the hashes of the blocks from some index on.
+     *
+     * @param index
+     *   The index of the first block to forget.
+     */
+    void removeFrom(int index) {
+      while (this.size > 0 && this.indices[this.size - 1] >= index) {
+        this.hashes[--this.size] = null;
+      } // while
+    } // removeFrom(int)
+  } // class SparseHashes
+} // class ColumnarBlockStore
@@ -0,0 +1,859 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Blocks kept on disk, in an append-only log split into segment
+ * files of a fixed size. Blocks are written through a file channel
+ * and read back through a memory map of each segment, so getting a
+ * block reads straight from the page cache without a system call.
+ * Getting a block is not zero-copy, though: the hashes and fixed
+ * fields are read in place, but each call decodes the transactions
+ * into a new Block, as every other store's blocks are objects too.
+ *
+ * Each segment starts with a header of its own: a magic number and
+ * the version of the format, which must be FORMAT_VERSION. The store
+ * will not open a directory with a segment in any other format.
+ *
+ * Each block is one record: a fixed-size header (the length of the
+ * body, the number, the nonce, the number of transactions, the
+ * previous hash, and the hash), a body (the Merkle root of a batch,
+ * then each transaction in the format of BlockCodec), and a CRC-32
+ * of the header and body. Removing the last
+ * block zeroes its record. When a store is opened, it reads records
+ * until it finds one that is zeroed, torn, or out of order, and zeroes
+ * what is left of a torn one, so a crash in the middle of a write
+ * loses at most the blocks written since the last call to sync().
+ *
+ * Syncing also appends the positions of the new records to an index
+ * file, so that opening a store need not read (or checksum) the
+ * records that were synced: it trusts the positions in the index,
+ * checks only the last record they cover, and reads the records after
+ * it as above. Removing a synced block cuts the index back first. If
+ * the index does not fit the segments, the store reads every record.
+ * Opening a store therefore does not catch damage to synced records;
+ * BlockChain.check() does. Adding a block does not sync it, so
+ * a store that is not synced (or closed) may lose any number of blocks
+ * if the machine goes down; BlockChain syncs its store whenever it
+ * takes a snapshot.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+public class FileBlockStore implements BlockStore, AutoCloseable {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of bytes in each segment file, unless a single block
+   * needs more.
+   */
+  public static final int DEFAULT_SEGMENT_BYTES = 1 << 24;
+
+  /**
+   * The version of the format of segment files.
+   */
+  public static final int FORMAT_VERSION = 1;
+
+  /**
+   * The first four bytes of every segment file ("BLKS").
+   */
+  private static final int MAGIC = 0x424C4B53;
+
+  /**
+   * The number of bytes in the header of a segment file: the magic
+   * number and the version.
+   */
+  private static final int SEGMENT_HEADER_BYTES = 8;
+
+  /**
+   * The number of bytes in a stored hash (or the room for one).
+   */
+  private static final int HASH_BYTES = 32;
+
+  /**
+   * Where the length of the body starts in a record.
+   */
+  private static final int LENGTH = 0;
+
+  /**
+   * Where the number of the block starts in a record.
+   */
+  private static final int NUMBER = 4;
+
+  /**
+   * Where the nonce starts in a record.
+   */
+  private static final int NONCE = 8;
+
+  /**
+   * Where the number of transactions starts in a record.
+   */
+  private static final int COUNT = 16;
+
+  /**
+   * Where the kind of block (single or batch) is in a record.
+   */
+  private static final int KIND = 20;
+
+  /**
+   * Where the length of the previous hash is in a record.
+   */
+  private static final int PREV_LENGTH = 21;
+
+  /**
+   * Where the previous hash starts in a record.
+   */
+  private static final int PREV_HASH = 22;
+
+  /**
+   * Where the hash of the block starts in a record.
+   */
+  private static final int HASH = PREV_HASH + HASH_BYTES;
+
+  /**
+   * The number of bytes in the header of a record.
+   */
+  private static final int HEADER_BYTES = HASH + HASH_BYTES;
+
+  /**
+   * The number of bytes in the checksum at the end of a record.
+   */
+  private static final int TRAILER_BYTES = 4;
+
+  /**
+   * The fewest bytes a transaction takes in a record.
+   */
+  private static final int MIN_TRANSACTION_BYTES = 3;
+
+  /**
+   * The kind of a block with a single transaction.
+   */
+  private static final byte SINGLE = 0;
+
+  /**
+   * The kind of a block with a batch of transactions.
+   */
+  private static final byte BATCH = 1;
+
+  /**
+   * The name of a segment file, given its index.
+   */
+  private static final String SEGMENT_NAME = "blocks-%08d.log";
+
+  /**
+   * The name of the index file.
+   */
+  private static final String INDEX_NAME = "blocks.idx";
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The directory that holds the segment files.
+   */
+  private Path directory;
+
+  /**
+   * The number of bytes in a new segment file.
+   */
+  private int segmentBytes;
+
+  /**
+   * The segments, in order.
+   */
+  private List<Segment> segments;
+
+  /**
+   * Where each block is: the index of its segment in the high 32 bits
+   * and the offset of its record in the low 32.
+   */
+  private long[] positions;
+
+  /**
+   * The number of blocks in the store.
+   */
+  private int size;
+
+  /**
+   * Space for encoding records.
+   */
+  private ByteBuffer scratch;
+
+  /**
+   * The names in the blocks that have been read.
+   */
+  private UserDictionary users;
+
+  /**
+   * The index file, which holds the position of each synced block.
+   */
+  private FileChannel index;
+
+  /**
+   * The number of positions in the index file.
+   */
+  private int indexed;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Open the store in a directory, creating the directory if need be.
+   *
+   * @param directory1
+   *   The directory.
+   *
+   * @throws IOException
+   *   If the directory or its segment files cannot be read, or if a
+   *   segment file is in an unknown format.
+   */
+  public FileBlockStore(Path directory1) throws IOException {
+    this(directory1, DEFAULT_SEGMENT_BYTES);
+  } // FileBlockStore(Path)
+
+  /**
+   * Open the store in a directory, creating the directory if need be,
+   * with segment files of some size.
+   *
+   * @param directory1
+   *   The directory.
+   * @param segmentBytes1
+   *   The number of bytes in each new segment file.
+   *
+   * @throws IOException
+   *   If the directory or its segment files cannot be read, or if a
+   *   segment file is in an unknown format.
+   */
+  public FileBlockStore(Path directory1, int segmentBytes1) throws IOException {
+    this.directory = Files.createDirectories(directory1);
+    this.segmentBytes = segmentBytes1;
+    this.segments = new ArrayList<Segment>();
+    this.positions = new long[1024];
+    this.size = 0;
+    this.scratch = ByteBuffer.allocate(1024);
+    this.users = new UserDictionary();
+
+    List<Path> files;
+    try (Stream<Path> listing = Files.list(this.directory)) {
+      files = listing
+          .filter((p) -> p.getFileName().toString().matches("blocks-\\d{8}\\.log"))
+          .sorted()
+          .toList();
+    } // try
+    try {
+      for (int i = 0; i < files.size(); i++) {
+        if (this.segments.size() < i || !files.get(i).equals(this.segmentPath(i))) {
+          // Nothing past a missing segment can follow on.
+          Files.delete(files.get(i));
+          continue;
+        } // if
+        this.segments.add(this.openSegment(i, 0));
+      } // for
+    } catch (IOException e) {
+      for (Segment seg : this.segments) {
+        seg.channel.close();
+      } // for
+      throw e;
+    } // try-catch
+
+    this.index = FileChannel.open(this.directory.resolve(INDEX_NAME),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    int first = this.readIndex();
+    for (int i = first; i < this.segments.size(); i++) {
+      if (!this.scan(i, this.segments.get(i))) {
+        // Nothing past a torn record can follow on.
+        for (int j = this.segments.size() - 1; j > i; j--) {
+          this.segments.remove(j).channel.close();
+          Files.delete(this.segmentPath(j));
+        } // for
+      } // if
+    } // for
+  } // FileBlockStore(Path, int)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Get the path of a segment file.
+   *
+   * @param index
+   *   The index of the segment.
+   *
+   * @return the path.
+   */
+  private Path segmentPath(int index) {
+    return this.directory.resolve(String.format(SEGMENT_NAME, index));
+  } // segmentPath(int)
+
+  /**
+   * Open (or create) a segment file and map it.
+   *
+   * @param index
+   *   The index of the segment.
+   * @param minBytes
+   *   The fewest bytes of records the segment must hold.
+   *
+   * @return the segment.
+   *
+   * @throws IOException
+   *   If the file cannot be opened or mapped, or is not a segment file
+   *   in the current format.
+   */
+  private Segment openSegment(int index, int minBytes) throws IOException {
+    FileChannel channel = FileChannel.open(this.segmentPath(index),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      if (channel.size() == 0) {
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_BYTES)
+            .putInt(MAGIC)
+            .putInt(FORMAT_VERSION)
+            .flip();
+        while (header.hasRemaining()) {
+          channel.write(header, header.position());
+        } // while
+      } // if
+      long capacity = Math.max(channel.size(),
+          Math.max(SEGMENT_HEADER_BYTES + minBytes, this.segmentBytes));
+      if (channel.size() < capacity) {
+        // Extend the file (sparsely) so that the whole map is backed.
+        channel.write(ByteBuffer.allocate(1), capacity - 1);
+      } // if
+      Segment seg =
+          new Segment(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, capacity));
+      if (seg.map.getInt(0) != MAGIC) {
+        throw new IOException(this.segmentPath(index) + " is not a segment file");
+      } // if
+      int version = seg.map.getInt(4);
+      if (version != FORMAT_VERSION) {
+        throw new IOException(
+          this.segmentPath(index) + " is in unknown format version " + version
+        );
+      } // if
+      seg.used = SEGMENT_HEADER_BYTES;
+      return seg;
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    } // try-catch
+  } // openSegment(int, int)
+
+  /**
+   * Adopt the positions in the index file that fit the segments, and
+   * cut the file back to them. The positions must go forward, each
+   * segment must start with a record, and the last record must be
+   * intact; if not, none of the positions are adopted.
+   *
+   * @return the index of the segment that holds the last adopted
+   *   record, or 0 if there is none.
+   *
+   * @throws IOException
+   *   If the index file cannot be read or cut back.
+   */
+  private int readIndex() throws IOException {
+    int count = (int) Math.min(this.index.size() / Long.BYTES, Integer.MAX_VALUE / Long.BYTES);
+    ByteBuffer buf = ByteBuffer.allocate(count * Long.BYTES);
+    while (buf.hasRemaining() && this.index.read(buf, buf.position()) >= 0) {
+      // Keep reading.
+    } // while
+    long[] found = new long[count];
+    buf.flip().asLongBuffer().get(found);
+
+    int n = 0;
+    while (n < count) {
+      int seg = (int) (found[n] >>> 32);
+      int offset = (int) found[n];
+      int prevSeg = (n == 0) ? 0 : (int) (found[n - 1] >>> 32);
+      boolean next = (n == 0) ? (seg == 0 && offset == SEGMENT_HEADER_BYTES)
+          : (seg == prevSeg && offset > (int) found[n - 1])
+            || (seg == prevSeg + 1 && offset == SEGMENT_HEADER_BYTES);
+      if (!next || seg >= this.segments.size()
+          || offset > this.segments.get(seg).map.capacity() - HEADER_BYTES - TRAILER_BYTES) {
+        break;
+      } // if
+      n++;
+    } // while
+    if (n > 0 && !this.isIntact(found[n - 1], n - 1)) {
+      n = 0;
+    } // if
+
+    this.positions = Arrays.copyOf(found, Math.max(n, this.positions.length));
+    this.size = n;
+    this.indexed = n;
+    if (this.index.size() != (long) n * Long.BYTES) {
+      this.index.truncate((long) n * Long.BYTES);
+    } // if
+    for (int i = 0; i < n; i++) {
+      if (i == n - 1 || (int) (found[i] >>> 32) != (int) (found[i + 1] >>> 32)) {
+        // The last record in its segment.
+        Segment seg = this.segments.get((int) (found[i] >>> 32));
+        int offset = (int) found[i];
+        seg.used = offset + HEADER_BYTES + seg.map.getInt(offset + LENGTH) + TRAILER_BYTES;
+      } // if
+    } // for
+    return (n == 0) ? 0 : (int) (found[n - 1] >>> 32);
+  } // readIndex()
+
+  /**
+   * Determine if a record is intact and holds some block.
+   *
+   * @param pos
+   *   The position of the record.
+   * @param num
+   *   The number of the block.
+   *
+   * @return true if the record is intact and false otherwise.
+   */
+  private boolean isIntact(long pos, int num) {
+    MappedByteBuffer map = this.segments.get((int) (pos >>> 32)).map;
+    int offset = (int) pos;
+    int length = map.getInt(offset + LENGTH);
+    return length > 0
+        && length <= map.capacity() - offset - HEADER_BYTES - TRAILER_BYTES
+        && map.getInt(offset + NUMBER) == num
+        && map.getInt(offset + HEADER_BYTES + length) == checksum(map, offset, length);
+  } // isIntact(long, int)
+
+  /**
+   * Find the records in a segment that are not in the index.
+   *
+   * @param index
+   *   The index of the segment.
+   * @param seg
+   *   The segment.
+   *
+   * @return true if the segment ends cleanly and false if it ends in
+   *   a record that is torn or out of order.
+   *
+   * @throws IOException
+   *   If the end of the segment cannot be zeroed.
+   */
+  private boolean scan(int index, Segment seg) throws IOException {
+    MappedByteBuffer map = seg.map;
+    int offset = seg.used;
+    while (offset + HEADER_BYTES + TRAILER_BYTES <= map.capacity()) {
+      int length = map.getInt(offset + LENGTH);
+      if (length == 0) {
+        break;
+      } // if
+      if (!this.isIntact(((long) index << 32) | offset, this.size)) {
+        zeroFrom(seg, offset);
+        seg.used = offset;
+        return false;
+      } // if
+      this.addPosition(index, offset);
+      offset += HEADER_BYTES + length + TRAILER_BYTES;
+    } // while
+    seg.used = offset;
+    return true;
+  } // scan(int, Segment)
+
+  /**
+   * Zero the end of a segment, from the start of a torn record. Its
+   * length cannot be trusted, so this zeroes up to the last byte of
+   * the segment that is not zero; otherwise, once shorter records
+   * were written over its start, a later scan could find what is left
+   * of it after them and drop every record that follows.
+   *
+   * @param seg
+   *   The segment.
+   * @param offset
+   *   Where the torn record starts.
+   *
+   * @throws IOException
+   *   If the segment cannot be written.
+   */
+  private static void zeroFrom(Segment seg, int offset) throws IOException {
+    int end = seg.map.capacity();
+    while (end - Long.BYTES >= offset && seg.map.getLong(end - Long.BYTES) == 0) {
+      end -= Long.BYTES;
+    } // while
+    while (end > offset && seg.map.get(end - 1) == 0) {
+      end--;
+    } // while
+    ByteBuffer zeros = ByteBuffer.allocate(Math.min(end - offset, 1 << 16));
+    long at = offset;
+    while (at < end) {
+      zeros.clear().limit((int) Math.min(zeros.capacity(), end - at));
+      at += seg.channel.write(zeros, at);
+    } // while
+    seg.channel.force(false);
+  } // zeroFrom(Segment, int)
+
+  /**
+   * Compute the checksum of the header and body of a record.
+   *
+   * @param buffer
+   *   The buffer that holds the record.
+   * @param offset
+   *   Where the record starts.
+   * @param length
+   *   The length of the body.
+   *
+   * @return the checksum.
+   */
+  private static int checksum(ByteBuffer buffer, int offset, int length) {
+    CRC32 crc = new CRC32();
+    crc.update(buffer.slice(offset, HEADER_BYTES + length));
+    return (int) crc.getValue();
+  } // checksum(ByteBuffer, int, int)
+
+  /**
+   * Note where the next block is.
+   *
+   * @param index
+   *   The index of its segment.
+   * @param offset
+   *   The offset of its record.
+   */
+  private void addPosition(int index, int offset) {
+    if (this.size == this.positions.length) {
+      this.positions = Arrays.copyOf(this.positions, 2 * this.size);
+    } // if
+    this.positions[this.size++] = ((long) index << 32) | offset;
+  } // addPosition(int, int)
+
+  /**
+   * Encode a block as a record in the scratch buffer.
+   *
+   * @param blk
+   *   The block.
+   *
+   * @return the buffer, flipped for writing.
+   *
+   * @throws IllegalArgumentException
+   *   If the block's hashes are too long to store.
+   */
+  private ByteBuffer encode(Block blk) {
+    Hash prev = blk.getPrevHash();
+    Hash root = blk.getMerkleRoot();
+    if (blk.getHash().length() != HASH_BYTES || prev.length() > HASH_BYTES
+        || (root != null && root.length() != HASH_BYTES)) {
+      throw new IllegalArgumentException("Block " + blk.getNum() + ": hashes too long to store");
+    } // if
+    List<Transaction> txs = blk.getTransactions();
+    int length = (root == null) ? 0 : HASH_BYTES;
+    for (Transaction tx : txs) {
+      length += BlockCodec.transactionSize(tx);
+    } // for
+    int total = HEADER_BYTES + length + TRAILER_BYTES;
+    if (this.scratch.capacity() < total) {
+      this.scratch = ByteBuffer.allocate(Math.max(total, 2 * this.scratch.capacity()));
+    } // if
+    ByteBuffer buf = this.scratch.clear();
+    buf.putInt(length)
+        .putInt(blk.getNum())
+        .putLong(blk.getNonce())
+        .putInt(txs.size())
+        .put((root == null) ? SINGLE : BATCH)
+        .put((byte) prev.length());
+    prev.writeTo(buf);
+    while (buf.position() < HASH) {
+      buf.put((byte) 0);
+    } // while
+    blk.getHash().writeTo(buf);
+    if (root != null) {
+      root.writeTo(buf);
+    } // if
+    for (Transaction tx : txs) {
+      BlockCodec.writeTransaction(buf, tx);
+    } // for
+    buf.putInt(checksum(buf, 0, length));
+    return buf.flip();
+  } // encode(Block)
+
+  /**
+   * Read some bytes out of a record.
+   *
+   * @param map
+   *   The segment that holds the record.
+   * @param offset
+   *   Where the bytes start.
+   * @param length
+   *   How many bytes to read.
+   * @param end
+   *   Where the body of the record ends.
+   *
+   * @return the bytes.
+   *
+   * @throws IllegalStateException
+   *   If the bytes run past the end of the body.
+   */
+  private static byte[] bytes(MappedByteBuffer map, int offset, int length, int end) {
+    if (length < 0 || length > end - offset) {
+      throw new IllegalStateException("Corrupt block record at " + offset);
+    } // if
+    byte[] result = new byte[length];
+    map.get(offset, result);
+    return result;
+  } // bytes(MappedByteBuffer, int, int, int)
+
+  /**
+   * Write all of a buffer to a channel.
+   *
+   * @param channel
+   *   The channel.
+   * @param buf
+   *   The bytes to write.
+   * @param offset
+   *   Where in the file to write them.
+   *
+   * @throws UncheckedIOException
+   *   If the write fails.
+   */
+  private static void writeFully(FileChannel channel, ByteBuffer buf, long offset) {
+    try {
+      while (buf.hasRemaining()) {
+        offset += channel.write(buf, offset);
+      } // while
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try-catch
+  } // writeFully(FileChannel, ByteBuffer, long)
+
+  // +-----------------+---------------------------------------------
+  // | Package methods |
+  // +-----------------+
+
+  /**
+   * Get the dictionary of the names in the blocks read so far. A
+   * chain over the store shares it, so that the chain has one copy of
+   * each name.
+   *
+   * @return the dictionary.
+   */
+  UserDictionary users() {
+    return this.users;
+  } // users()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Determine how many blocks are in the store.
+   *
+   * @return the number of blocks.
+   */
+  public int size() {
+    return this.size;
+  } // size()
+
+  /**
+   * Get a block, reading it from the mapped segment that holds it.
+   *
+   * @param index
+   *   The number of the block, between 0 (inclusive) and size()
+   *   (exclusive).
+   *
+   * @return the block.
+   *
+   * @throws IllegalStateException
+   *   If the record of the block is corrupt.
+   */
+  public Block get(int index) {
+    if (index < 0 || index >= this.size) {
+      throw new IndexOutOfBoundsException(
+        "No block " + index + " in a store of " + this.size
+      );
+    } // if
+    long pos = this.positions[index];
+    MappedByteBuffer map = this.segments.get((int) (pos >>> 32)).map;
+    int offset = (int) pos;
+    int end = offset + HEADER_BYTES + map.getInt(offset + LENGTH);
+    int count = map.getInt(offset + COUNT);
+    if (count < 1 || count > (end - offset - HEADER_BYTES) / MIN_TRANSACTION_BYTES) {
+      throw new IllegalStateException("Corrupt record for block " + index);
+    } // if
+    int prevLength = map.get(offset + PREV_LENGTH);
+    Hash prev = (prevLength == HASH_BYTES)
+        ? Hash.read(map, offset + PREV_HASH)
+        : Hash.wrap(bytes(map, offset + PREV_HASH, prevLength, offset + HASH));
+    int p = offset + HEADER_BYTES;
+    Hash root = null;
+    if (map.get(offset + KIND) == BATCH) {
+      root = Hash.read(map, p);
+      p += HASH_BYTES;
+    } // if
+    ArrayList<Transaction> txs = new ArrayList<Transaction>(count);
+    ByteBuffer body = map.slice(p, end - p);
+    try {
+      for (int i = 0; i < count; i++) {
+        txs.add(BlockCodec.readTransaction(body, this.users));
+      } // for
+    } catch (IllegalArgumentException | BufferUnderflowException e) {
+      throw new IllegalStateException("Corrupt record for block " + index, e);
+    } // try-catch
+    return new Block(map.getInt(offset + NUMBER), txs, root, prev,
+        map.getLong(offset + NONCE), Hash.read(map, offset + HASH));
+  } // get(int)
+
+  /**
+   * Add a block to the end of the store, starting a new segment if
+   * the last one is full.
+   *
+   * @param blk
+   *   The block to add.
+   *
+   * @throws IllegalArgumentException
+   *   If the block's hashes are too long to store.
+   * @throws UncheckedIOException
+   *   If the block cannot be written.
+   */
+  public void add(Block blk) {
+    ByteBuffer record = this.encode(blk);
+    int index = this.segments.size() - 1;
+    if (index < 0 || this.segments.get(index).free() < record.remaining()) {
+      index++;
+      try {
+        this.segments.add(this.openSegment(index, record.remaining()));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } // try-catch
+    } // if
+    Segment seg = this.segments.get(index);
+    writeFully(seg.channel, record, seg.used);
+    this.addPosition(index, seg.used);
+    seg.used += record.limit();
+  } // add(Block)
+
+  /**
+   * Remove the last block from the store, zeroing its record on disk
+   * (and deleting its segment, if that leaves the segment empty).
+   *
+   * @throws UncheckedIOException
+   *   If the record cannot be zeroed.
+   */
+  public void removeLast() {
+    if (this.size == 0) {
+      throw new IllegalStateException("Cannot remove from an empty store");
+    } // if
+    long pos = this.positions[this.size - 1];
+    int index = (int) (pos >>> 32);
+    int offset = (int) pos;
+    Segment seg = this.segments.get(index);
+    try {
+      if (this.size - 1 < this.indexed) {
+        // The index must never cover a zeroed record.
+        this.indexed = this.size - 1;
+        this.index.truncate((long) this.indexed * Long.BYTES);
+        this.index.force(true);
+      } // if
+      writeFully(seg.channel, ByteBuffer.allocate(seg.used - offset), offset);
+      seg.channel.force(false);
+      this.size--;
+      seg.used = offset;
+      if (offset == SEGMENT_HEADER_BYTES && index > 0) {
+        this.segments.remove(index);
+        seg.channel.close();
+        Files.delete(this.segmentPath(index));
+      } // if
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try-catch
+  } // removeLast()
+
+  /**
+   * Make sure every block added so far is on disk, then add their
+   * positions to the index.
+   *
+   * @throws IOException
+   *   If the segments or the index cannot be written.
+   */
+  public void sync() throws IOException {
+    for (Segment seg : this.segments) {
+      seg.channel.force(false);
+    } // for
+    if (this.indexed < this.size) {
+      ByteBuffer buf = ByteBuffer.allocate((this.size - this.indexed) * Long.BYTES);
+      buf.asLongBuffer().put(this.positions, this.indexed, this.size - this.indexed);
+      long offset = (long) this.indexed * Long.BYTES;
+      while (buf.hasRemaining()) {
+        offset += this.index.write(buf, offset);
+      } // while
+      this.index.force(false);
+      this.indexed = this.size;
+    } // if
+  } // sync()
+
+  /**
+   * Write out the blocks and close the segment files. The store may
+   * not be used afterwards.
+   *
+   * @throws IOException
+   *   If the segments cannot be written or closed.
+   */
+  public void close() throws IOException {
+    this.sync();
+    for (Segment seg : this.segments) {
+      seg.channel.close();
+    } // for
+    this.index.close();
+    this.segments.clear();
+    this.size = 0;
+  } // close()
+
+  // +---------------+-----------------------------------------------
+  // | Inner classes |
+  // +---------------+
+
+  /**
+   * One segment file.
+   */
+  static class Segment {
+    /**
+     * The channel we write through.
+     */
+    FileChannel channel;
+
+    /**
+     * The whole file, mapped for reading.
+     */
+    MappedByteBuffer map;
+
+    /**
+     * The number of bytes at the start of the file that hold the
+     * header and records.
+     */
+    int used;
+
+    /**
+     * Create a segment.
+     *
+     * @param channel1
+     *   The channel to write through.
+     * @param map1
+     *   The file, mapped for reading.
+     */
+    Segment(FileChannel channel1, MappedByteBuffer map1) {
+      this.channel = channel1;
+      this.map = map1;
+    } // Segment(FileChannel, MappedByteBuffer)
+
+    /**
+     * Determine how many bytes are left for records.
+     *
+     * @return the number of free bytes.
+     */
+    int free() {
+      return this.map.capacity() - this.used;
+    } // free()
+  } // class Segment
+} // class FileBlockStore
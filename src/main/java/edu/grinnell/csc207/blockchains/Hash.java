@@ -1,24 +1,80 @@
 package edu.grinnell.csc207.blockchains;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.HexFormat;
 
 /**
  * Encapsulated hashes.
  *
+ * A 32-byte hash, such as a SHA-256 digest, is kept as four longs;
+ * hashes of other lengths are kept as arrays. Either way, the hash
+ * code is computed once, when the hash is made. Hashes never change;
+ * the miner's scratch hashes are a separate type, ScratchHash.
+ *
  * @author David William Stroud
  * @author Sheilla Muligande
  */
-public class Hash {
+public class Hash implements Comparable<Hash> {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of bytes in a hash that we keep as longs.
+   */
+  private static final int WORD_BYTES = 4 * Long.BYTES;
+
+  /**
+   * Reads and writes big-endian longs in byte arrays.
+   */
+  private static final VarHandle LONGS =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+  /**
+   * Space for feeding a hash kept as longs to a digest.
+   */
+  private static final ThreadLocal<byte[]> SCRATCH =
+      ThreadLocal.withInitial(() -> new byte[WORD_BYTES]);
+
   // +--------+------------------------------------------------------
   // | Fields |
   // +--------+
 
   /**
-   * The digest this object represents, stored as an array
-   * of bytes with no other references to it.
+   * Bytes 0 through 7 of a 32-byte hash, big-endian.
+   */
+  private final long word0;
+
+  /**
+   * Bytes 8 through 15 of a 32-byte hash, big-endian.
+   */
+  private final long word1;
+
+  /**
+   * Bytes 16 through 23 of a 32-byte hash, big-endian.
+   */
+  private final long word2;
+
+  /**
+   * Bytes 24 through 31 of a 32-byte hash, big-endian.
    */
-  private byte[] inner;
+  private final long word3;
+
+  /**
+   * The bytes of a hash that is not 32 bytes long, stored as an array
+   * with no other references to it, or null for a 32-byte hash.
+   */
+  private final byte[] inner;
+
+  /**
+   * The hash code.
+   */
+  private final int code;
 
   // +--------------+------------------------------------------------
   // | Constructors |
@@ -31,9 +87,136 @@ public class Hash {
    *   The data to copy into the hash.
    */
   public Hash(byte[] data) {
-    this.inner = Arrays.copyOf(data, data.length);
+    this(data, false);
   } // Hash(byte[])
 
+  /**
+   * Create a new encapsulated hash that may take ownership of an
+   * array rather than copying it.
+   *
+   * @param data
+   *   The bytes of the hash.
+   * @param owned
+   *   True if the hash may keep data itself and false if it must copy.
+   */
+  private Hash(byte[] data, boolean owned) {
+    if (data.length == WORD_BYTES) {
+      this.word0 = (long) LONGS.get(data, 0);
+      this.word1 = (long) LONGS.get(data, Long.BYTES);
+      this.word2 = (long) LONGS.get(data, 2 * Long.BYTES);
+      this.word3 = (long) LONGS.get(data, 3 * Long.BYTES);
+      this.inner = null;
+      this.code = Long.hashCode(this.word0 ^ this.word1 ^ this.word2 ^ this.word3);
+    } else {
+      this.word0 = 0;
+      this.word1 = 0;
+      this.word2 = 0;
+      this.word3 = 0;
+      this.inner = owned ? data : Arrays.copyOf(data, data.length);
+      this.code = Arrays.hashCode(this.inner);
+    } // if/else
+  } // Hash(byte[], boolean)
+
+  /**
+   * Create a new 32-byte hash from its words.
+   *
+   * @param word0a
+   *   Bytes 0 through 7, big-endian.
+   * @param word1a
+   *   Bytes 8 through 15, big-endian.
+   * @param word2a
+   *   Bytes 16 through 23, big-endian.
+   * @param word3a
+   *   Bytes 24 through 31, big-endian.
+   */
+  Hash(long word0a, long word1a, long word2a, long word3a) {
+    this.word0 = word0a;
+    this.word1 = word1a;
+    this.word2 = word2a;
+    this.word3 = word3a;
+    this.inner = null;
+    this.code = Long.hashCode(word0a ^ word1a ^ word2a ^ word3a);
+  } // Hash(long, long, long, long)
+
+  // +-----------------+---------------------------------------------
+  // | Package methods |
+  // +-----------------+
+
+  /**
+   * Get one of the words of a 32-byte hash. Every method reads the
+   * words through this one, so that ScratchHash can supply its own.
+   *
+   * @param i
+   *   The index of the word, between 0 and 3.
+   *
+   * @return the word.
+   */
+  long word(int i) {
+    switch (i) {
+      case 0:
+        return this.word0;
+      case 1:
+        return this.word1;
+      case 2:
+        return this.word2;
+      default:
+        return this.word3;
+    } // switch
+  } // word(int)
+
+  /**
+   * Wrap an array in a hash without copying it. The caller must not
+   * change the array afterwards.
+   *
+   * @param data
+   *   The array to use as the hash.
+   *
+   * @return a hash of those bytes.
+   */
+  static Hash wrap(byte[] data) {
+    return new Hash(data, true);
+  } // wrap(byte[])
+
+  /**
+   * Make a 32-byte hash from its words.
+   *
+   * @param word0a
+   *   Bytes 0 through 7, big-endian.
+   * @param word1a
+   *   Bytes 8 through 15, big-endian.
+   * @param word2a
+   *   Bytes 16 through 23, big-endian.
+   * @param word3a
+   *   Bytes 24 through 31, big-endian.
+   *
+   * @return the hash.
+   */
+  static Hash ofWords(long word0a, long word1a, long word2a, long word3a) {
+    return new Hash(word0a, word1a, word2a, word3a);
+  } // ofWords(long, long, long, long)
+
+  /**
+   * Read a 32-byte hash out of a buffer without copying it into an
+   * array first.
+   *
+   * @param buffer
+   *   The buffer. Its position does not change.
+   * @param index
+   *   Where the hash starts in the buffer.
+   *
+   * @return the hash.
+   */
+  static Hash read(ByteBuffer buffer, int index) {
+    ByteBuffer big = buffer.order() == ByteOrder.BIG_ENDIAN
+        ? buffer
+        : buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+    return new Hash(
+        big.getLong(index),
+        big.getLong(index + Long.BYTES),
+        big.getLong(index + 2 * Long.BYTES),
+        big.getLong(index + 3 * Long.BYTES));
+  } // read(ByteBuffer, int)
+
   // +---------+-----------------------------------------------------
   // | Methods |
   // +---------+
@@ -44,7 +227,7 @@ public class Hash {
    * @return the number of bytes in the hash.
    */
   public int length() {
-    return this.inner.length;
+    return (this.inner == null) ? WORD_BYTES : this.inner.length;
   } // length()
 
   /**
@@ -57,16 +240,93 @@ public class Hash {
    * @return the ith byte
    */
   public byte get(int i) {
-    return this.inner[i];
+    if (this.inner != null) {
+      return this.inner[i];
+    } // if
+    if (i < 0 || i >= WORD_BYTES) {
+      throw new ArrayIndexOutOfBoundsException(i);
+    } // if
+    return (byte) (this.word(i / Long.BYTES) >>> (Byte.SIZE * (Long.BYTES - 1 - i % Long.BYTES)));
   } // get()
 
+  /**
+   * Get eight bytes of a 32-byte hash at once.
+   *
+   * @param i
+   *   The index of the group of eight, between 0 and 3.
+   *
+   * @return bytes 8i through 8i + 7, big-endian.
+   *
+   * @throws IllegalStateException
+   *   If the hash is not 32 bytes long.
+   * @throws IndexOutOfBoundsException
+   *   If i is not between 0 and 3.
+   */
+  public long getLong(int i) {
+    if (this.inner != null) {
+      throw new IllegalStateException("Only 32-byte hashes have words");
+    } // if
+    if (i < 0 || i >= WORD_BYTES / Long.BYTES) {
+      throw new IndexOutOfBoundsException(i);
+    } // if
+    return this.word(i);
+  } // getLong(int)
+
+  /**
+   * Put the bytes of this hash into a buffer without copying them
+   * anywhere else.
+   *
+   * @param buffer
+   *   The buffer, which gets length() bytes at its position.
+   */
+  public void writeTo(ByteBuffer buffer) {
+    if (this.inner != null) {
+      buffer.put(this.inner);
+    } else {
+      ByteOrder order = buffer.order();
+      buffer.order(ByteOrder.BIG_ENDIAN)
+          .putLong(this.word(0))
+          .putLong(this.word(1))
+          .putLong(this.word(2))
+          .putLong(this.word(3))
+          .order(order);
+    } // if/else
+  } // writeTo(ByteBuffer)
+
+  /**
+   * Feed the bytes of this hash to a digest without making a new
+   * array.
+   *
+   * @param md
+   *   The digest to update.
+   */
+  public void updateDigest(MessageDigest md) {
+    if (this.inner != null) {
+      md.update(this.inner);
+    } else {
+      byte[] bytes = SCRATCH.get();
+      LONGS.set(bytes, 0, this.word(0));
+      LONGS.set(bytes, Long.BYTES, this.word(1));
+      LONGS.set(bytes, 2 * Long.BYTES, this.word(2));
+      LONGS.set(bytes, 3 * Long.BYTES, this.word(3));
+      md.update(bytes);
+    } // if/else
+  } // updateDigest(MessageDigest)
+
   /**
    * Convert to a hex string.
    *
    * @return the hash as a hex string.
    */
   public String toString() {
-    return HexFormat.of().withUpperCase().formatHex(this.inner);
+    HexFormat hex = HexFormat.of().withUpperCase();
+    if (this.inner != null) {
+      return hex.formatHex(this.inner);
+    } // if
+    return hex.toHexDigits(this.word(0))
+        + hex.toHexDigits(this.word(1))
+        + hex.toHexDigits(this.word(2))
+        + hex.toHexDigits(this.word(3));
   } // toString()
 
   /**
@@ -79,16 +339,60 @@ public class Hash {
    *   otherwise.
    */
   public boolean equals(Object other) {
-    return (other instanceof Hash)
-      && Arrays.equals(((Hash) other).inner, this.inner);
+    if (!(other instanceof Hash)) {
+      return false;
+    } // if
+    Hash that = (Hash) other;
+    return this.hashCode() == that.hashCode()
+      && this.word(0) == that.word(0)
+      && this.word(1) == that.word(1)
+      && this.word(2) == that.word(2)
+      && this.word(3) == that.word(3)
+      && Arrays.equals(this.inner, that.inner);
   } // equals(Object)
 
+  /**
+   * Compare to another hash, byte by byte, reading the bytes as
+   * unsigned. When one hash is the start of the other, the shorter
+   * one comes first.
+   *
+   * @param other
+   *   The hash to compare to.
+   *
+   * @return a negative number if this hash comes first, 0 if the two
+   *   are equal, and a positive number if the other comes first.
+   */
+  public int compareTo(Hash other) {
+    if (this.inner == null && other.inner == null) {
+      for (int i = 0; i < WORD_BYTES / Long.BYTES; i++) {
+        int cmp = Long.compareUnsigned(this.word(i), other.word(i));
+        if (cmp != 0) {
+          return cmp;
+        } // if
+      } // for
+      return 0;
+    } // if
+    int n = Math.min(this.length(), other.length());
+    for (int i = 0; i < n; i++) {
+      int cmp = Byte.compareUnsigned(this.get(i), other.get(i));
+      if (cmp != 0) {
+        return cmp;
+      } // if
+    } // for
+    return Integer.compare(this.length(), other.length());
+  } // compareTo(Hash)
+
   /**
    * Returns a copy of this hash's bytes.
    * @return A copy of this hash's bytes.
    */
   public byte[] getBytes() {
-    return Arrays.copyOf(this.inner, this.length());
+    if (this.inner != null) {
+      return Arrays.copyOf(this.inner, this.inner.length);
+    } // if
+    byte[] bytes = new byte[WORD_BYTES];
+    this.writeTo(ByteBuffer.wrap(bytes));
+    return bytes;
   } // getBytes()
 
   /**
@@ -97,6 +401,6 @@ public class Hash {
    * @return the hash code.
    */
   public int hashCode() {
-    return this.toString().hashCode();
+    return this.code;
   } // hashCode()
 } // class Hash
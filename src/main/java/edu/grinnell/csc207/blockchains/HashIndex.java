@@ -0,0 +1,404 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.stream.IntStream;
+
+/**
+ * The numbers of the blocks in some run of blocks, by hash. Blocks
+ * are added and removed at the end of the run, as they are in a
+ * chain.
+ *
+ * Everything is kept in arrays of primitives: a column of the four
+ * words of each block's hash, by block number; an open-addressing
+ * table (with linear probing) of block numbers, keyed by those words;
+ * and the block numbers in order of their hashes, so that we can find
+ * all the hashes that start with some hex digits. The order is brought
+ * up to date only when a prefix is looked up, so that lookup is
+ * synchronized: readers that share a lock may call it at once, while
+ * add and remove need the lock to themselves. Only 32-byte hashes,
+ * which every mined block has, are indexed; a block with any other
+ * hash is never found.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+class HashIndex {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of hex digits in a block hash.
+   */
+  private static final int HEX_DIGITS = 64;
+
+  /**
+   * The number of longs in a hash.
+   */
+  private static final int HASH_LONGS = 4;
+
+  /**
+   * The number of blocks we start with room for.
+   */
+  private static final int INITIAL_CAPACITY = 64;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of blocks in the index.
+   */
+  private int size;
+
+  /**
+   * The hash of each block, as four words, big-endian.
+   */
+  private long[] words;
+
+  /**
+   * The blocks whose hashes are not indexed.
+   */
+  private BitSet unindexed;
+
+  /**
+   * The table of blocks, by hash. Each slot holds one more than the
+   * number of a block, or 0 if it is empty. It is never more than
+   * half full.
+   */
+  private int[] table;
+
+  /**
+   * The first few indexed blocks, in order of their hashes.
+   */
+  private int[] order;
+
+  /**
+   * The number of blocks in order.
+   */
+  private int ordered;
+
+  /**
+   * The number of blocks that order covers: every indexed block below
+   * this number is in it.
+   */
+  private int orderedTo;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create an index with no blocks.
+   */
+  HashIndex() {
+    this.size = 0;
+    this.words = new long[HASH_LONGS * INITIAL_CAPACITY];
+    this.unindexed = new BitSet();
+    this.table = new int[2 * INITIAL_CAPACITY];
+    this.order = new int[0];
+    this.ordered = 0;
+    this.orderedTo = 0;
+  } // HashIndex()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the slot where the search for a hash starts.
+   *
+   * @param word3
+   *   The last word of the hash.
+   *
+   * @return the slot.
+   */
+  private int home(long word3) {
+    return Long.hashCode(word3) & (this.table.length - 1);
+  } // home(long)
+
+  /**
+   * Find the slot that holds a hash, or the empty slot where it would
+   * go.
+   *
+   * @param w0
+   *   The first word of the hash.
+   * @param w1
+   *   The second word.
+   * @param w2
+   *   The third word.
+   * @param w3
+   *   The last word.
+   *
+   * @return the slot.
+   */
+  private int slot(long w0, long w1, long w2, long w3) {
+    int mask = this.table.length - 1;
+    int slot = this.home(w3);
+    while (this.table[slot] != 0) {
+      int w = HASH_LONGS * (this.table[slot] - 1);
+      if (this.words[w] == w0 && this.words[w + 1] == w1 && this.words[w + 2] == w2
+          && this.words[w + 3] == w3) {
+        return slot;
+      } // if
+      slot = (slot + 1) & mask;
+    } // while
+    return slot;
+  } // slot(long, long, long, long)
+
+  /**
+   * Put a block in the table.
+   *
+   * @param num
+   *   The number of the block, whose words are in the column.
+   */
+  private void insert(int num) {
+    int w = HASH_LONGS * num;
+    int slot = this.slot(this.words[w], this.words[w + 1], this.words[w + 2], this.words[w + 3]);
+    this.table[slot] = num + 1;
+  } // insert(int)
+
+  /**
+   * Take the entry out of a slot, moving later entries back so that
+   * every entry can still be found from its home slot.
+   *
+   * @param hole
+   *   The slot.
+   */
+  private void delete(int hole) {
+    int mask = this.table.length - 1;
+    int j = hole;
+    while (true) {
+      j = (j + 1) & mask;
+      if (this.table[j] == 0) {
+        break;
+      } // if
+      int home = this.home(this.words[HASH_LONGS * (this.table[j] - 1) + 3]);
+      if (((j - home) & mask) >= ((j - hole) & mask)) {
+        this.table[hole] = this.table[j];
+        hole = j;
+      } // if
+    } // while
+    this.table[hole] = 0;
+  } // delete(int)
+
+  /**
+   * Compare the hash of a block to a hash given as words.
+   *
+   * @param num
+   *   The number of the block.
+   * @param key
+   *   The words of the other hash.
+   *
+   * @return a negative number, 0, or a positive number as the hash of
+   *   the block is before, the same as, or after the other hash.
+   */
+  private int compare(int num, long[] key) {
+    for (int i = 0; i < HASH_LONGS; i++) {
+      int cmp = Long.compareUnsigned(this.words[HASH_LONGS * num + i], key[i]);
+      if (cmp != 0) {
+        return cmp;
+      } // if
+    } // for
+    return 0;
+  } // compare(int, long[])
+
+  /**
+   * Compare the hashes of two blocks.
+   *
+   * @param a
+   *   The number of one block.
+   * @param b
+   *   The number of the other.
+   *
+   * @return a negative number, 0, or a positive number as the hash of
+   *   a is before, the same as, or after that of b.
+   */
+  private int compare(int a, int b) {
+    for (int i = 0; i < HASH_LONGS; i++) {
+      int cmp = Long.compareUnsigned(this.words[HASH_LONGS * a + i],
+          this.words[HASH_LONGS * b + i]);
+      if (cmp != 0) {
+        return cmp;
+      } // if
+    } // for
+    return 0;
+  } // compare(int, int)
+
+  /**
+   * Find where a hash is, or would go, in order.
+   *
+   * @param key
+   *   The words of the hash.
+   *
+   * @return the index in order of the first block whose hash is not
+   *   before the hash.
+   */
+  private int lowerBound(long[] key) {
+    int lo = 0;
+    int hi = this.ordered;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (this.compare(this.order[mid], key) < 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      } // if/else
+    } // while
+    return lo;
+  } // lowerBound(long[])
+
+  /**
+   * Bring order up to date, by sorting the blocks added since and
+   * merging them in.
+   */
+  private void sortNew() {
+    if (this.orderedTo == this.size) {
+      return;
+    } // if
+    int[] added = IntStream.range(this.orderedTo, this.size)
+        .filter((n) -> !this.unindexed.get(n))
+        .boxed()
+        .sorted(this::compare)
+        .mapToInt(Integer::intValue)
+        .toArray();
+    int[] merged = new int[this.ordered + added.length];
+    int i = 0;
+    int j = 0;
+    for (int k = 0; k < merged.length; k++) {
+      merged[k] = (j == added.length
+          || (i < this.ordered && this.compare(this.order[i], added[j]) <= 0))
+          ? this.order[i++]
+          : added[j++];
+    } // for
+    this.order = merged;
+    this.ordered = merged.length;
+    this.orderedTo = this.size;
+  } // sortNew()
+
+  /**
+   * Turn hex digits into the words of a hash, filling in the missing
+   * digits.
+   *
+   * @param prefix
+   *   The digits.
+   * @param fill
+   *   The digit to fill in with.
+   *
+   * @return the words.
+   */
+  private static long[] words(String prefix, char fill) {
+    String hex = prefix + String.valueOf(fill).repeat(HEX_DIGITS - prefix.length());
+    long[] key = new long[HASH_LONGS];
+    for (int i = 0; i < HASH_LONGS; i++) {
+      key[i] = Long.parseUnsignedLong(hex.substring(16 * i, 16 * i + 16), 16);
+    } // for
+    return key;
+  } // words(String, char)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Add a block, which must come just after the last one added.
+   *
+   * @param blk
+   *   The block.
+   */
+  void add(Block blk) {
+    int num = this.size;
+    if (HASH_LONGS * (num + 1) > this.words.length) {
+      this.words = Arrays.copyOf(this.words, 2 * this.words.length);
+    } // if
+    Hash hash = blk.getHash();
+    if (hash.length() != HASH_LONGS * Long.BYTES) {
+      this.unindexed.set(num);
+      this.size++;
+      return;
+    } // if
+    for (int i = 0; i < HASH_LONGS; i++) {
+      this.words[HASH_LONGS * num + i] = hash.getLong(i);
+    } // for
+    this.size++;
+    if (2 * (this.size - this.unindexed.cardinality()) > this.table.length) {
+      this.table = new int[2 * this.table.length];
+      for (int n = 0; n < this.size; n++) {
+        if (!this.unindexed.get(n)) {
+          this.insert(n);
+        } // if
+      } // for
+    } else {
+      this.insert(num);
+    } // if/else
+  } // add(Block)
+
+  /**
+   * Remove the last block added.
+   *
+   * @param blk
+   *   The block.
+   */
+  void remove(Block blk) {
+    int num = --this.size;
+    if (this.unindexed.get(num)) {
+      this.unindexed.clear(num);
+    } else {
+      int w = HASH_LONGS * num;
+      this.delete(this.slot(this.words[w], this.words[w + 1], this.words[w + 2],
+          this.words[w + 3]));
+      if (num < this.orderedTo) {
+        int at = this.lowerBound(Arrays.copyOfRange(this.words, w, w + HASH_LONGS));
+        System.arraycopy(this.order, at + 1, this.order, at, this.ordered - at - 1);
+        this.ordered--;
+      } // if
+    } // if/else
+    this.orderedTo = Math.min(this.orderedTo, this.size);
+  } // remove(Block)
+
+  /**
+   * Find the number of the block with some hash.
+   *
+   * @param hash
+   *   The hash.
+   *
+   * @return the number of the block, or -1 if there is none.
+   */
+  int find(Hash hash) {
+    if (hash.length() != HASH_LONGS * Long.BYTES) {
+      return -1;
+    } // if
+    int slot = this.slot(hash.getLong(0), hash.getLong(1), hash.getLong(2), hash.getLong(3));
+    return this.table[slot] - 1;
+  } // find(Hash)
+
+  /**
+   * Find the numbers of the blocks whose hashes start with some hex
+   * digits.
+   *
+   * @param prefix
+   *   The digits, in either case.
+   * @param limit
+   *   The most blocks to find.
+   *
+   * @return the numbers of the blocks, in order of their hashes.
+   *
+   * @throws IllegalArgumentException
+   *   If prefix is not made of at most 64 hex digits.
+   */
+  synchronized int[] findPrefix(String prefix, int limit) {
+    if (prefix.length() > HEX_DIGITS || !prefix.chars().allMatch(HexFormat::isHexDigit)) {
+      throw new IllegalArgumentException("Not a prefix of a hash: '" + prefix + "'");
+    } // if
+    this.sortNew();
+    long[] hi = words(prefix, 'f');
+    int start = this.lowerBound(words(prefix, '0'));
+    int end = start;
+    while (end < this.ordered && end - start < limit && this.compare(this.order[end], hi) <= 0) {
+      end++;
+    } // while
+    return Arrays.copyOfRange(this.order, start, end);
+  } // findPrefix(String, int)
+} // class HashIndex
@@ -1,5 +1,7 @@
 package edu.grinnell.csc207.blockchains;
 
+import java.util.Arrays;
+
 /**
  * Things that validate hashes.
  *
@@ -16,4 +18,45 @@ public interface HashValidator {
    */
   boolean isValid(Hash hash);
 
+  /**
+   * Determine if a hash, given as raw bytes, meets some criterion.
+   * The miner calls this with a scratch buffer, so it should not
+   * allocate. Validators that do not override it are handed a scratch
+   * hash by the miner instead, which must not be kept; the default
+   * wraps the bytes in a Hash (without copying them if they fill the
+   * array).
+   *
+   * @param bytes
+   *   An array that holds the hash.
+   * @param offset
+   *   Where the hash starts in the array.
+   * @param length
+   *   The number of bytes in the hash.
+   *
+   * @return true if the hash is valid and false otherwise.
+   */
+  default boolean isValid(byte[] bytes, int offset, int length) {
+    if (offset == 0 && length == bytes.length) {
+      return this.isValid(Hash.wrap(bytes));
+    } // if
+    return this.isValid(Hash.wrap(Arrays.copyOfRange(bytes, offset, offset + length)));
+  } // isValid(byte[], int, int)
+
+  /**
+   * Determine quickly if a hash that starts with some bytes could be
+   * valid. Validators that only look at the start of a hash can
+   * override this so the miner can reject hopeless hashes without
+   * writing out and checking the rest of them. (The whole hash is
+   * still computed; its first word depends on every round.)
+   *
+   * @param firstWord
+   *   The first four bytes of the hash, big-endian.
+   *
+   * @return false if no hash that starts with those bytes is valid,
+   *   and true otherwise.
+   */
+  default boolean mayBeValid(int firstWord) {
+    return true;
+  } // mayBeValid(int)
+
 } // interface HashValidator
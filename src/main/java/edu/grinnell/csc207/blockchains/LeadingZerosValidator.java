@@ -0,0 +1,123 @@
+package edu.grinnell.csc207.blockchains;
+
+/**
+ * Validates hashes that start with at least some number of zero bits.
+ * Each extra bit doubles the expected work of mining a block.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+public class LeadingZerosValidator implements HashValidator {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of zero bits a valid hash starts with.
+   */
+  private int bits;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a validator.
+   *
+   * @param bits1
+   *   The number of zero bits a valid hash must start with.
+   */
+  public LeadingZerosValidator(int bits1) {
+    if (bits1 < 0) {
+      throw new IllegalArgumentException(
+        "Cannot require a negative number of zero bits"
+      );
+    } // if
+    this.bits = bits1;
+  } // LeadingZerosValidator(int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of zero bits a valid hash starts with.
+   *
+   * @return the number of bits.
+   */
+  public int getBits() {
+    return this.bits;
+  } // getBits()
+
+  /**
+   * Determine if a hash starts with enough zero bits.
+   *
+   * @param hash
+   *   The hash we're checking.
+   *
+   * @return true if the hash is valid and false otherwise.
+   */
+  public boolean isValid(Hash hash) {
+    if (hash.length() * Byte.SIZE < this.bits) {
+      return false;
+    } // if
+    int whole = this.bits / Byte.SIZE;
+    for (int i = 0; i < whole; i++) {
+      if (hash.get(i) != 0) {
+        return false;
+      } // if
+    } // for
+    int rest = this.bits % Byte.SIZE;
+    return rest == 0 || ((hash.get(whole) & 0xFF) >>> (Byte.SIZE - rest)) == 0;
+  } // isValid(Hash)
+
+  /**
+   * Determine if a hash, given as raw bytes, starts with enough
+   * zero bits.
+   *
+   * @param bytes
+   *   An array that holds the hash.
+   * @param offset
+   *   Where the hash starts in the array.
+   * @param length
+   *   The number of bytes in the hash.
+   *
+   * @return true if the hash is valid and false otherwise.
+   */
+  public boolean isValid(byte[] bytes, int offset, int length) {
+    if (length * Byte.SIZE < this.bits) {
+      return false;
+    } // if
+    int whole = this.bits / Byte.SIZE;
+    for (int i = 0; i < whole; i++) {
+      if (bytes[offset + i] != 0) {
+        return false;
+      } // if
+    } // for
+    int rest = this.bits % Byte.SIZE;
+    return rest == 0 || ((bytes[offset + whole] & 0xFF) >>> (Byte.SIZE - rest)) == 0;
+  } // isValid(byte[], int, int)
+
+  /**
+   * Determine quickly if a hash that starts with some bytes could
+   * start with enough zero bits.
+   *
+   * @param firstWord
+   *   The first four bytes of the hash, big-endian.
+   *
+   * @return false if no hash that starts with those bytes is valid,
+   *   and true otherwise.
+   */
+  public boolean mayBeValid(int firstWord) {
+    return Integer.numberOfLeadingZeros(firstWord) >= Math.min(this.bits, Integer.SIZE);
+  } // mayBeValid(int)
+
+  /**
+   * Convert to string form.
+   *
+   * @return a string describing the validator.
+   */
+  public String toString() {
+    return this.bits + " leading zero bits";
+  } // toString()
+} // class LeadingZerosValidator
@@ -0,0 +1,203 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The balances of every user after some run of blocks, kept up to
+ * date one block at a time. Deposits (transactions with an empty
+ * source) create money; every other transaction moves it. Balances
+ * are kept in an array indexed by ID in the chain's user dictionary.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+class Ledger {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The names of the users.
+   */
+  private UserDictionary users;
+
+  /**
+   * The balance of each user, by ID. Users past the end have none.
+   */
+  private int[] balances;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a ledger in which nobody has any money.
+   *
+   * @param users1
+   *   The names of the users.
+   */
+  Ledger(UserDictionary users1) {
+    this.users = users1;
+    this.balances = new int[16];
+  } // Ledger(UserDictionary)
+
+  /**
+   * Create a ledger with some balances.
+   *
+   * @param users1
+   *   The names of the users.
+   * @param balances1
+   *   The balance of each user who has one.
+   */
+  Ledger(UserDictionary users1, Map<String, Integer> balances1) {
+    this(users1);
+    for (Map.Entry<String, Integer> entry : balances1.entrySet()) {
+      int id = this.users.id(entry.getKey());
+      this.reserve(id);
+      this.balances[id] = entry.getValue();
+    } // for
+  } // Ledger(UserDictionary, Map<String, Integer>)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Make room for the balance of a user.
+   *
+   * @param id
+   *   The ID of the user.
+   */
+  private void reserve(int id) {
+    if (id >= this.balances.length) {
+      this.balances = Arrays.copyOf(this.balances, Math.max(id + 1, 2 * this.balances.length));
+    } // if
+  } // reserve(int)
+
+  /**
+   * Move money for one transaction.
+   *
+   * @param tx
+   *   The transaction.
+   * @param sign
+   *   1 to apply the transaction or -1 to undo it.
+   */
+  private void move(Transaction tx, int sign) {
+    if (!tx.isDeposit()) {
+      int source = this.users.id(tx.getSource());
+      this.reserve(source);
+      this.balances[source] -= sign * tx.getAmount();
+    } // if
+    int target = this.users.id(tx.getTarget());
+    this.reserve(target);
+    this.balances[target] += sign * tx.getAmount();
+  } // move(Transaction, int)
+
+  /**
+   * Undo the first few transactions of a block, last first.
+   *
+   * @param transactions
+   *   The transactions of the block.
+   * @param count
+   *   How many of them to undo.
+   */
+  private void undo(List<Transaction> transactions, int count) {
+    for (int i = count - 1; i >= 0; i--) {
+      this.move(transactions.get(i), -1);
+    } // for
+  } // undo(List<Transaction>, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Find one user's balance.
+   *
+   * @param user
+   *   The user whose balance we want to find.
+   *
+   * @return that user's balance (or 0, if the user is not in the ledger).
+   */
+  int balance(String user) {
+    return this.balance(this.users.find(user));
+  } // balance(String)
+
+  /**
+   * Find one user's balance.
+   *
+   * @param id
+   *   The ID of the user, or -1 for a user not in the dictionary.
+   *
+   * @return that user's balance (or 0, if the user is not in the ledger).
+   */
+  int balance(int id) {
+    return (id < 0 || id >= this.balances.length) ? 0 : this.balances[id];
+  } // balance(int)
+
+  /**
+   * Get every balance that is not 0.
+   *
+   * @return the balance of each user who has one, by name.
+   */
+  Map<String, Integer> balances() {
+    HashMap<String, Integer> result = new HashMap<String, Integer>();
+    for (int id = 0; id < this.balances.length; id++) {
+      if (this.balances[id] != 0) {
+        result.put(this.users.name(id), this.balances[id]);
+      } // if
+    } // for
+    return result;
+  } // balances()
+
+  /**
+   * Apply the transactions of a block, in order. If any of them is
+   * illegal, the ledger is left as it was.
+   *
+   * @param blk
+   *   The block.
+   *
+   * @throws IllegalArgumentException
+   *   If a transaction has a negative amount or takes a user's balance
+   *   below 0.
+   */
+  void apply(Block blk) {
+    List<Transaction> transactions = blk.getTransactions();
+    for (int i = 0; i < transactions.size(); i++) {
+      Transaction tx = transactions.get(i);
+      if (tx.getAmount() < 0) {
+        this.undo(transactions, i);
+        throw new IllegalArgumentException(
+          "Block "
+          + blk.getNum()
+          + ": tx amount below 0"
+        );
+      } // if
+      if (!tx.isDeposit() && this.balance(tx.getSource()) < tx.getAmount()) {
+        this.undo(transactions, i);
+        throw new IllegalArgumentException(
+          "Block "
+          + blk.getNum()
+          + ": tx causes user '"
+          + tx.getSource()
+          + "' to drop below 0 balance"
+        );
+      } // if
+      this.move(tx, 1);
+    } // for
+  } // apply(Block)
+
+  /**
+   * Undo the transactions of a block that was the last one applied.
+   *
+   * @param blk
+   *   The block.
+   */
+  void revert(Block blk) {
+    List<Transaction> transactions = blk.getTransactions();
+    this.undo(transactions, transactions.size());
+  } // revert(Block)
+} // class Ledger
@@ -0,0 +1,356 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Snapshots of the balances and users of a chain, kept as files in a
+ * directory, so that a chain whose blocks are stored can start from
+ * the newest snapshot and replay only the blocks after it.
+ *
+ * A snapshot records the height of the chain when it was taken, the
+ * hash of the last block then, and whether check() had verified every
+ * block by then. It only counts as valid if the store still has a
+ * block with that hash at that height; it vouches for the blocks
+ * before it, which are not replayed.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+class LedgerSnapshots {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The first four bytes of every snapshot file.
+   */
+  private static final int MAGIC = 0x4C444752;
+
+  /**
+   * The version of the snapshot format.
+   */
+  private static final int VERSION = 1;
+
+  /**
+   * The number of snapshots to keep. Older ones are deleted.
+   */
+  private static final int KEEP = 2;
+
+  /**
+   * The name of a snapshot file, given its height.
+   */
+  private static final String SNAPSHOT_NAME = "ledger-%010d.snap";
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The directory that holds the snapshot files.
+   */
+  private Path directory;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Keep snapshots in a directory, creating the directory if need be.
+   *
+   * @param directory1
+   *   The directory.
+   *
+   * @throws IOException
+   *   If the directory cannot be created.
+   */
+  LedgerSnapshots(Path directory1) throws IOException {
+    this.directory = Files.createDirectories(directory1);
+  } // LedgerSnapshots(Path)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * List the snapshot files, newest first.
+   *
+   * @return the paths of the files.
+   *
+   * @throws IOException
+   *   If the directory cannot be read.
+   */
+  private List<Path> files() throws IOException {
+    try (Stream<Path> listing = Files.list(this.directory)) {
+      return listing
+          .filter((p) -> p.getFileName().toString().matches("ledger-\\d{10}\\.snap"))
+          .sorted((a, b) -> b.compareTo(a))
+          .toList();
+    } // try
+  } // files()
+
+  /**
+   * Write a map from names to numbers.
+   *
+   * @param out
+   *   Where to write it.
+   * @param map
+   *   The map.
+   *
+   * @throws IOException
+   *   If the map cannot be written.
+   */
+  private static void writeMap(DataOutputStream out, Map<String, Integer> map)
+      throws IOException {
+    out.writeInt(map.size());
+    for (Map.Entry<String, Integer> entry : map.entrySet()) {
+      byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+      out.writeInt(name.length);
+      out.write(name);
+      out.writeInt(entry.getValue());
+    } // for
+  } // writeMap(DataOutputStream, Map<String, Integer>)
+
+  /**
+   * Read a map written by writeMap.
+   *
+   * @param in
+   *   Where to read it from.
+   *
+   * @return the map.
+   *
+   * @throws IOException
+   *   If the map cannot be read.
+   */
+  private static Map<String, Integer> readMap(DataInputStream in) throws IOException {
+    int size = in.readInt();
+    if (size < 0 || size > in.available()) {
+      throw new IOException("Bad map size " + size);
+    } // if
+    HashMap<String, Integer> map = new HashMap<String, Integer>();
+    for (int i = 0; i < size; i++) {
+      int length = in.readInt();
+      if (length < 0 || length > in.available()) {
+        throw new IOException("Bad name length " + length);
+      } // if
+      byte[] name = new byte[length];
+      in.readFully(name);
+      map.put(new String(name, StandardCharsets.UTF_8), in.readInt());
+    } // for
+    return map;
+  } // readMap(DataInputStream)
+
+  /**
+   * Read a snapshot file, if it is intact and fits the blocks.
+   *
+   * @param file
+   *   The file.
+   * @param store
+   *   The blocks.
+   * @param users
+   *   The names of the users of the chain.
+   *
+   * @return the snapshot, or null if it is damaged or does not fit.
+   */
+  private static Snapshot read(Path file, BlockStore store, UserDictionary users) {
+    try {
+      byte[] bytes = Files.readAllBytes(file);
+      if (bytes.length < Integer.BYTES) {
+        return null;
+      } // if
+      int body = bytes.length - Integer.BYTES;
+      CRC32 crc = new CRC32();
+      crc.update(bytes, 0, body);
+      if ((int) crc.getValue() != ByteBuffer.wrap(bytes, body, Integer.BYTES).getInt()) {
+        return null;
+      } // if
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, body));
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return null;
+      } // if
+      int height = in.readInt();
+      boolean verified = in.readBoolean();
+      byte[] tip = new byte[in.readUnsignedByte()];
+      in.readFully(tip);
+      if (height < 1 || height > store.size()
+          || !store.get(height - 1).getHash().equals(Hash.wrap(tip))) {
+        return null;
+      } // if
+      Map<String, Integer> balances = readMap(in);
+      Map<String, Integer> counts = readMap(in);
+      return new Snapshot(height, verified, new Ledger(users, balances),
+          new UserRegistry(users, counts));
+    } catch (IOException | RuntimeException e) {
+      return null;
+    } // try-catch
+  } // read(Path, BlockStore, UserDictionary)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Encode a snapshot. The caller must keep the ledger and registry
+   * from changing meanwhile, but need not wait for the snapshot to be
+   * written.
+   *
+   * @param height
+   *   The number of blocks in the chain.
+   * @param tip
+   *   The hash of the last block.
+   * @param verified
+   *   True if check() has verified every block.
+   * @param ledger
+   *   The balances after the last block.
+   * @param registry
+   *   The users paid by the blocks.
+   *
+   * @return the bytes of the snapshot.
+   */
+  static byte[] encode(int height, Hash tip, boolean verified, Ledger ledger,
+      UserRegistry registry) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(height);
+      out.writeBoolean(verified);
+      out.writeByte(tip.length());
+      out.write(tip.getBytes());
+      writeMap(out, ledger.balances());
+      writeMap(out, registry.counts());
+      CRC32 crc = new CRC32();
+      crc.update(bytes.toByteArray());
+      out.writeInt((int) crc.getValue());
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      // Byte array streams do not fail.
+      throw new IllegalStateException(e);
+    } // try-catch
+  } // encode(int, Hash, boolean, Ledger, UserRegistry)
+
+  /**
+   * Write an encoded snapshot, replacing any other at the same height,
+   * and delete all but the newest few. The file only takes its final
+   * name once all of it is on disk. Each write has a temporary file of
+   * its own, so snapshots written at once (even at the same height)
+   * do not get in each other's way.
+   *
+   * @param height
+   *   The height of the snapshot.
+   * @param data
+   *   The bytes of the snapshot, from encode.
+   *
+   * @throws IOException
+   *   If the snapshot cannot be written.
+   */
+  void write(int height, byte[] data) throws IOException {
+    Path file = this.directory.resolve(String.format(SNAPSHOT_NAME, height));
+    Path temp = Files.createTempFile(this.directory, file.getFileName() + ".", ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        while (buf.hasRemaining()) {
+          channel.write(buf);
+        } // while
+        channel.force(true);
+      } // try
+      Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      Files.deleteIfExists(temp);
+      throw e;
+    } // try-catch
+    List<Path> files = this.files();
+    for (int i = KEEP; i < files.size(); i++) {
+      Files.deleteIfExists(files.get(i));
+    } // for
+  } // write(int, byte[])
+
+  /**
+   * Find the newest snapshot that is intact and fits some blocks.
+   *
+   * @param store
+   *   The blocks.
+   * @param users
+   *   The names of the users of the chain.
+   *
+   * @return the snapshot, or null if there is none.
+   */
+  Snapshot newest(BlockStore store, UserDictionary users) {
+    try {
+      for (Path file : this.files()) {
+        Snapshot snap = read(file, store, users);
+        if (snap != null) {
+          return snap;
+        } // if
+      } // for
+    } catch (IOException e) {
+      // Without a snapshot, we replay every block.
+    } // try-catch
+    return null;
+  } // newest(BlockStore, UserDictionary)
+
+  // +---------------+-----------------------------------------------
+  // | Inner classes |
+  // +---------------+
+
+  /**
+   * A snapshot, read back.
+   */
+  static class Snapshot {
+    /**
+     * The number of blocks in the chain when the snapshot was taken.
+     */
+    int height;
+
+    /**
+     * Whether check() had verified every one of those blocks.
+     */
+    boolean verified;
+
+    /**
+     * The balances after those blocks.
+     */
+    Ledger ledger;
+
+    /**
+     * The users paid by those blocks.
+     */
+    UserRegistry registry;
+
+    /**
+     * Create a snapshot.
+     *
+     * @param height1
+     *   The number of blocks in the chain.
+     * @param verified1
+     *   Whether check() had verified every block.
+     * @param ledger1
+     *   The balances after the blocks.
+     * @param registry1
+     *   The users paid by the blocks.
+     */
+    Snapshot(int height1, boolean verified1, Ledger ledger1, UserRegistry registry1) {
+      this.height = height1;
+      this.verified = verified1;
+      this.ledger = ledger1;
+      this.registry = registry1;
+    } // Snapshot(int, boolean, Ledger, UserRegistry)
+  } // class Snapshot
+} // class LedgerSnapshots
@@ -0,0 +1,101 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.List;
+
+/**
+ * Merkle roots for batches of transactions.
+ *
+ * Each leaf is the SHA-256 of a 0 byte followed by the transaction
+ * (length-prefixed UTF-8 source and target, then the amount); each
+ * inner node is the SHA-256 of a 1 byte followed by its two children.
+ * The tags keep a leaf from posing as an inner node. When a level has
+ * an odd number of nodes, the last one moves up unchanged rather than
+ * being paired with itself, so no two batches share a root.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+public class MerkleTree {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The tag hashed in front of a leaf.
+   */
+  private static final byte LEAF = 0;
+
+  /**
+   * The tag hashed in front of an inner node.
+   */
+  private static final byte NODE = 1;
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Hash one transaction into a leaf.
+   *
+   * @param md The digest to use.
+   * @param tx The transaction.
+   * @return the leaf.
+   */
+  static byte[] leaf(MessageDigest md, Transaction tx) {
+    byte[] source = tx.sourceBytes();
+    byte[] target = tx.targetBytes();
+    md.update(LEAF);
+    md.update(
+        ByteBuffer
+            .allocate(3 * Integer.BYTES + source.length + target.length)
+            .putInt(source.length)
+            .put(source)
+            .putInt(target.length)
+            .put(target)
+            .putInt(tx.getAmount())
+            .array()
+    );
+    return md.digest();
+  } // leaf(MessageDigest, Transaction)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Compute the Merkle root of a batch of transactions.
+   *
+   * @param transactions
+   *   The transactions, in order. There must be at least one.
+   *
+   * @return the root.
+   */
+  public static Hash root(List<Transaction> transactions) {
+    if (transactions.isEmpty()) {
+      throw new IllegalArgumentException("A batch needs at least one transaction");
+    } // if
+    MessageDigest md = BlockHasher.newDigest();
+    byte[][] level = new byte[transactions.size()][];
+    for (int i = 0; i < level.length; i++) {
+      level[i] = leaf(md, transactions.get(i));
+    } // for
+
+    int size = level.length;
+    while (size > 1) {
+      int next = 0;
+      for (int i = 0; i + 1 < size; i += 2) {
+        md.update(NODE);
+        md.update(level[i]);
+        md.update(level[i + 1]);
+        level[next++] = md.digest();
+      } // for
+      if (size % 2 == 1) {
+        level[next++] = level[size - 1];
+      } // if
+      size = next;
+    } // while
+    return Hash.wrap(level[0]);
+  } // root(List<Transaction>)
+} // class MerkleTree
@@ -0,0 +1,443 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Searches for the nonce that makes a block valid, splitting the
+ * nonce space across several worker threads.
+ *
+ * Worker i of n tries the nonces i, i + n, i + 2n, and so on. In
+ * deterministic mode, a worker keeps going until its next nonce is
+ * larger than the best nonce found so far, so the result is always
+ * the lowest valid nonce (the same one a sequential search finds).
+ * Otherwise, every worker stops as soon as any worker succeeds.
+ *
+ * A search with a time limit fails when the limit passes only if no
+ * worker has found a valid nonce by then. The limit is kept by a timer
+ * rather than by the workers, so it holds even if the workers never
+ * get to run.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+public class Miner {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The value of the best nonce before any has been found.
+   */
+  private static final long NONE = Long.MAX_VALUE;
+
+  /**
+   * The number of nonces a worker tries between progress reports.
+   */
+  private static final int BATCH = 1024;
+
+  /**
+   * The minimum time between progress reports, in nanoseconds.
+   */
+  private static final long PROGRESS_NANOS = 100_000_000L;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of worker threads to use.
+   */
+  private int threads;
+  /**
+   * Whether we must find the lowest valid nonce.
+   */
+  private boolean deterministic;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a deterministic miner that uses one worker per
+   * available processor.
+   */
+  public Miner() {
+    this(Runtime.getRuntime().availableProcessors(), true);
+  } // Miner()
+
+  /**
+   * Create a miner.
+   *
+   * @param threads1
+   *   The number of worker threads to use. Must be positive.
+   * @param deterministic1
+   *   Whether the miner must return the lowest valid nonce
+   *   rather than the first one any worker finds.
+   */
+  public Miner(int threads1, boolean deterministic1) {
+    if (threads1 < 1) {
+      throw new IllegalArgumentException(
+        "A miner needs at least one thread"
+      );
+    } // if
+    this.threads = threads1;
+    this.deterministic = deterministic1;
+  } // Miner(int, boolean)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Start searching for a nonce for a block, running the workers
+   * on an executor.
+   *
+   * @param template The block whose nonce we are searching for.
+   * @param validator The object used to determine if a hash is valid.
+   * @param executor The executor that runs the workers.
+   * @param timeout How long to search for, or null for no limit.
+   * @param progress What to tell about progress, or null for nothing.
+   * @return a future for the valid block.
+   */
+  private CompletableFuture<Block> search(
+      Block template,
+      HashValidator validator,
+      Executor executor,
+      Duration timeout,
+      MiningProgress progress
+  ) {
+    Search search = new Search(template, validator, progress);
+    if (timeout != null) {
+      CompletableFuture.delayedExecutor(timeout.toNanos(), TimeUnit.NANOSECONDS)
+          .execute(search::expire);
+    } // if
+    for (int i = 0; i < this.threads; i++) {
+      long first = i;
+      try {
+        executor.execute(() -> search.run(first));
+      } catch (RejectedExecutionException ex) {
+        search.fail(ex);
+        search.finished();
+      } // try-catch
+    } // for
+    return search.result;
+  } // search(Block, HashValidator, Executor, Duration, MiningProgress)
+
+  /**
+   * Determine if a worker about to try a nonce can stop.
+   *
+   * @param nonce The next nonce the worker would try.
+   * @param best The lowest valid nonce found so far.
+   * @return true if the worker should stop and false otherwise.
+   */
+  private boolean isDone(long nonce, long best) {
+    return this.deterministic ? nonce > best : best != NONE;
+  } // isDone(long, long)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of worker threads this miner uses.
+   *
+   * @return the number of threads.
+   */
+  public int getThreads() {
+    return this.threads;
+  } // getThreads()
+
+  /**
+   * Determine if this miner always finds the lowest valid nonce.
+   *
+   * @return true if the miner is deterministic and false otherwise.
+   */
+  public boolean isDeterministic() {
+    return this.deterministic;
+  } // isDeterministic()
+
+  /**
+   * Mine a new block, searching for a nonce that makes it valid.
+   *
+   * @param num The index of the block in the chain.
+   * @param transaction The transaction the block contains.
+   * @param prevHash The hash of the previous block.
+   * @param validator The object used to determine if a hash is valid.
+   * @return a valid block.
+   */
+  public Block mine(
+      int num,
+      Transaction transaction,
+      Hash prevHash,
+      HashValidator validator
+  ) {
+    return this.mine(new Block(num, transaction, prevHash, 0), validator);
+  } // mine(int, Transaction, Hash, HashValidator)
+
+  /**
+   * Mine a block with the same contents as a template, searching for
+   * a nonce that makes it valid.
+   *
+   * @param template The block to mine. Its nonce is ignored.
+   * @param validator The object used to determine if a hash is valid.
+   * @return a valid block.
+   */
+  public Block mine(Block template, HashValidator validator) {
+    Executor executor = (this.threads == 1)
+        ? Runnable::run
+        : (r) -> new Thread(r, "miner").start();
+    CompletableFuture<Block> result =
+        this.search(template, validator, executor, null, null);
+    try {
+      return result.get();
+    } catch (InterruptedException ex) {
+      result.cancel(false);
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while mining", ex);
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ex.getCause();
+      } else if (ex.getCause() instanceof Error) {
+        throw (Error) ex.getCause();
+      } // if
+      throw new IllegalStateException(ex.getCause());
+    } // try-catch
+  } // mine(Block, HashValidator)
+
+  /**
+   * Start mining a new block without waiting for the result.
+   *
+   * Completing the returned future in any way, including cancelling
+   * it, stops the workers; each worker tries at most one more nonce.
+   * If the timeout passes before any worker finds a valid nonce, the
+   * future fails with a TimeoutException, whether or not the workers
+   * have started. Once a valid nonce is found, the timeout no longer
+   * applies, so a deterministic search still returns the lowest one.
+   *
+   * @param num The index of the block in the chain.
+   * @param transaction The transaction the block contains.
+   * @param prevHash The hash of the previous block.
+   * @param validator The object used to determine if a hash is valid.
+   * @param executor The executor that runs the workers.
+   * @param timeout How long to search for, or null for no limit.
+   * @param progress What to tell about progress, or null for nothing.
+   * @return a future for the valid block.
+   */
+  public CompletableFuture<Block> mineAsync(
+      int num,
+      Transaction transaction,
+      Hash prevHash,
+      HashValidator validator,
+      Executor executor,
+      Duration timeout,
+      MiningProgress progress
+  ) {
+    return this.mineAsync(
+        new Block(num, transaction, prevHash, 0),
+        validator,
+        executor,
+        timeout,
+        progress
+    );
+  } // mineAsync(int, Transaction, Hash, HashValidator, Executor, Duration, MiningProgress)
+
+  /**
+   * Start mining a block with the same contents as a template without
+   * waiting for the result. See mineAsync(int, Transaction, Hash,
+   * HashValidator, Executor, Duration, MiningProgress).
+   *
+   * @param template The block to mine. Its nonce is ignored.
+   * @param validator The object used to determine if a hash is valid.
+   * @param executor The executor that runs the workers.
+   * @param timeout How long to search for, or null for no limit.
+   * @param progress What to tell about progress, or null for nothing.
+   * @return a future for the valid block.
+   */
+  public CompletableFuture<Block> mineAsync(
+      Block template,
+      HashValidator validator,
+      Executor executor,
+      Duration timeout,
+      MiningProgress progress
+  ) {
+    return this.search(template, validator, executor, timeout, progress);
+  } // mineAsync(Block, HashValidator, Executor, Duration, MiningProgress)
+
+  // +---------------+-----------------------------------------------
+  // | Inner classes |
+  // +---------------+
+
+  /**
+   * The state shared by the workers of one search.
+   */
+  private class Search {
+    /**
+     * The block whose nonce we are searching for.
+     */
+    private Block template;
+    /**
+     * The object used to determine if a hash is valid.
+     */
+    private HashValidator validator;
+    /**
+     * What to tell about progress, or null for nothing.
+     */
+    private MiningProgress progress;
+    /**
+     * When the search started, from System.nanoTime().
+     */
+    private long startNanos;
+    /**
+     * When we last reported progress.
+     */
+    private AtomicLong lastReport;
+    /**
+     * The number of nonces tried, updated once per batch.
+     */
+    private AtomicLong tried = new AtomicLong();
+    /**
+     * The lowest valid nonce found so far.
+     */
+    private AtomicLong best = new AtomicLong(NONE);
+    /**
+     * The number of workers still running.
+     */
+    private AtomicInteger running = new AtomicInteger(Miner.this.threads);
+    /**
+     * The first thing that went wrong, if anything.
+     */
+    private AtomicReference<Throwable> failure = new AtomicReference<>();
+    /**
+     * Whether the workers should stop.
+     */
+    private volatile boolean stopped;
+    /**
+     * The result of the search.
+     */
+    private CompletableFuture<Block> result = new CompletableFuture<>();
+
+    /**
+     * Set up a search.
+     *
+     * @param template1 The block whose nonce we are searching for.
+     * @param validator1 The object used to determine if a hash is valid.
+     * @param progress1 What to tell about progress, or null for nothing.
+     */
+    Search(
+        Block template1,
+        HashValidator validator1,
+        MiningProgress progress1
+    ) {
+      this.template = template1;
+      this.validator = validator1;
+      this.progress = progress1;
+      this.startNanos = System.nanoTime();
+      this.lastReport = new AtomicLong(this.startNanos);
+      this.result.whenComplete((blk, ex) -> this.stopped = true);
+    } // Search(Block, HashValidator, MiningProgress)
+
+    /**
+     * Run one worker, catching anything that goes wrong.
+     *
+     * @param first The first nonce the worker tries.
+     */
+    void run(long first) {
+      try {
+        this.work(first);
+      } catch (Throwable ex) {
+        this.fail(ex);
+      } finally {
+        this.finished();
+      } // try-catch
+    } // run(long)
+
+    /**
+     * Try the nonces first, first + threads, ... until the search
+     * is over.
+     *
+     * @param first The first nonce to try.
+     */
+    private void work(long first) {
+      BlockHasher hasher = new BlockHasher(this.template);
+      int count = 0;
+      for (long nonce = first;
+          !this.stopped && !Miner.this.isDone(nonce, this.best.get());
+          nonce += Miner.this.threads) {
+        if (hasher.isValid(nonce, this.validator)) {
+          this.best.accumulateAndGet(nonce, Math::min);
+        } // if
+        if (++count == BATCH) {
+          this.checkIn(count);
+          count = 0;
+        } // if
+      } // for
+      this.tried.addAndGet(count);
+    } // work(long)
+
+    /**
+     * Record that a worker has tried some nonces, then report
+     * progress if it's time.
+     *
+     * @param count The number of nonces tried since the last check-in.
+     */
+    private void checkIn(int count) {
+      long total = this.tried.addAndGet(count);
+      long now = System.nanoTime();
+      long last = this.lastReport.get();
+      if (this.progress != null
+          && now - last >= PROGRESS_NANOS
+          && this.lastReport.compareAndSet(last, now)) {
+        this.progress.report(total, total * 1e9 / (now - this.startNanos));
+      } // if
+    } // checkIn(int)
+
+    /**
+     * Fail the search with a TimeoutException, unless a valid nonce
+     * has been found, in which case the workers finish as usual.
+     */
+    void expire() {
+      if (this.best.get() == NONE) {
+        this.result.completeExceptionally(
+            new TimeoutException("No nonce found before the deadline"));
+      } // if
+    } // expire()
+
+    /**
+     * Note that something went wrong and stop the search.
+     *
+     * @param ex What went wrong.
+     */
+    void fail(Throwable ex) {
+      this.failure.compareAndSet(null, ex);
+      this.stopped = true;
+    } // fail(Throwable)
+
+    /**
+     * Note that a worker has finished, completing the result once
+     * they all have.
+     */
+    void finished() {
+      if (this.running.decrementAndGet() > 0) {
+        return;
+      } // if
+      if (this.failure.get() != null) {
+        this.result.completeExceptionally(this.failure.get());
+      } else if (this.best.get() != NONE) {
+        this.result.complete(this.template.withNonce(this.best.get()));
+      } else {
+        // Someone else, or the timer, completed the result, which
+        // stopped us.
+        this.result.cancel(false);
+      } // if
+    } // finished()
+  } // class Search
+} // class Miner
@@ -0,0 +1,21 @@
+package edu.grinnell.csc207.blockchains;
+
+/**
+ * Things that want to hear how a nonce search is going.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+public interface MiningProgress {
+  /**
+   * Note the progress of a search. May be called from any of the
+   * mining threads.
+   *
+   * @param tried
+   *   The number of nonces tried so far.
+   * @param hashesPerSecond
+   *   The average number of nonces tried per second so far.
+   */
+  void report(long tried, double hashesPerSecond);
+
+} // interface MiningProgress
@@ -0,0 +1,84 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * A 32-byte hash that reads its bytes from an array that someone
+ * else keeps changing, such as the buffer a hasher writes each of its
+ * digests to. It lets a miner hand every attempt to a validator as a
+ * Hash without making a new one each time.
+ *
+ * A scratch hash changes whenever the array does, so it must never
+ * be kept, put in a collection, or handed out past the end of the
+ * call it was made for; copy it with new Hash(getBytes()) instead.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+final class ScratchHash extends Hash {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * Reads big-endian longs in byte arrays.
+   */
+  private static final VarHandle LONGS =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The bytes of the hash.
+   */
+  private byte[] bytes;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a scratch hash over an array.
+   *
+   * @param bytes1
+   *   The array, which must hold 32 bytes.
+   */
+  ScratchHash(byte[] bytes1) {
+    super(0, 0, 0, 0);
+    this.bytes = bytes1;
+  } // ScratchHash(byte[])
+
+  // +-----------------+---------------------------------------------
+  // | Package methods |
+  // +-----------------+
+
+  /**
+   * Get one of the words of the hash, as it is now.
+   *
+   * @param i
+   *   The index of the word, between 0 and 3.
+   *
+   * @return the word.
+   */
+  long word(int i) {
+    return (long) LONGS.get(this.bytes, i * Long.BYTES);
+  } // word(int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the hash code of the hash as it is now. It is the same as that
+   * of a Hash with the same bytes.
+   *
+   * @return the hash code.
+   */
+  public int hashCode() {
+    return Long.hashCode(this.word(0) ^ this.word(1) ^ this.word(2) ^ this.word(3));
+  } // hashCode()
+} // class ScratchHash
@@ -0,0 +1,124 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Arrays;
+
+/**
+ * Blocks kept in memory in fixed-size segments. Getting a block is
+ * two array lookups, and growing the store never copies blocks, just
+ * the (much shorter) array of segments.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+public class SegmentedBlockStore implements BlockStore {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The log (base 2) of the number of blocks in a segment.
+   */
+  private static final int SEGMENT_BITS = 10;
+
+  /**
+   * The number of blocks in a segment.
+   */
+  private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+
+  /**
+   * The number of segments we start with room for.
+   */
+  private static final int INITIAL_SEGMENTS = 4;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The segments. Segments past the last block may be null.
+   */
+  private Block[][] segments;
+
+  /**
+   * The number of blocks in the store.
+   */
+  private int size;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create an empty store.
+   */
+  public SegmentedBlockStore() {
+    this.segments = new Block[INITIAL_SEGMENTS][];
+    this.size = 0;
+  } // SegmentedBlockStore()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Determine how many blocks are in the store.
+   *
+   * @return the number of blocks.
+   */
+  public int size() {
+    return this.size;
+  } // size()
+
+  /**
+   * Get a block.
+   *
+   * @param index
+   *   The number of the block, between 0 (inclusive) and size()
+   *   (exclusive).
+   *
+   * @return the block.
+   */
+  public Block get(int index) {
+    if (index < 0 || index >= this.size) {
+      throw new IndexOutOfBoundsException(
+        "No block " + index + " in a store of " + this.size
+      );
+    } // if
+    return this.segments[index >>> SEGMENT_BITS][index & (SEGMENT_SIZE - 1)];
+  } // get(int)
+
+  /**
+   * Add a block to the end of the store.
+   *
+   * @param blk
+   *   The block to add.
+   */
+  public void add(Block blk) {
+    int segment = this.size >>> SEGMENT_BITS;
+    if (segment == this.segments.length) {
+      this.segments = Arrays.copyOf(this.segments, 2 * this.segments.length);
+    } // if
+    if (this.segments[segment] == null) {
+      this.segments[segment] = new Block[SEGMENT_SIZE];
+    } // if
+    this.segments[segment][this.size & (SEGMENT_SIZE - 1)] = blk;
+    this.size++;
+  } // add(Block)
+
+  /**
+   * Remove the last block from the store. Keeps one empty segment
+   * past the end, so that removing and adding at a segment boundary
+   * doesn't allocate each time.
+   */
+  public void removeLast() {
+    if (this.size == 0) {
+      throw new IllegalStateException("Cannot remove from an empty store");
+    } // if
+    this.size--;
+    int segment = this.size >>> SEGMENT_BITS;
+    this.segments[segment][this.size & (SEGMENT_SIZE - 1)] = null;
+    if (segment + 2 < this.segments.length) {
+      this.segments[segment + 2] = null;
+    } // if
+  } // removeLast()
+} // class SegmentedBlockStore
@@ -0,0 +1,158 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigInteger;
+import java.nio.ByteOrder;
+
+/**
+ * Validates 32-byte hashes that, read as unsigned big-endian numbers,
+ * are at most some target, in the style of Bitcoin. Lowering the
+ * target makes mining harder in steps as fine as we like.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+public class TargetValidator implements HashValidator {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of bytes in a hash we can validate.
+   */
+  private static final int HASH_BYTES = 32;
+
+  /**
+   * The number of longs in a hash we can validate.
+   */
+  private static final int WORDS = HASH_BYTES / Long.BYTES;
+
+  /**
+   * Reads big-endian longs out of byte arrays.
+   */
+  private static final VarHandle LONGS =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The target, as four big-endian words.
+   */
+  private long[] target;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a validator.
+   *
+   * @param target1
+   *   The largest valid hash, between 0 and 2^256 - 1.
+   */
+  public TargetValidator(BigInteger target1) {
+    if (target1.signum() < 0 || target1.bitLength() > HASH_BYTES * Byte.SIZE) {
+      throw new IllegalArgumentException(
+        "Target must be between 0 and 2^256 - 1"
+      );
+    } // if
+    byte[] raw = target1.toByteArray();
+    byte[] bytes = new byte[HASH_BYTES];
+    int n = Math.min(raw.length, HASH_BYTES);
+    System.arraycopy(raw, raw.length - n, bytes, HASH_BYTES - n, n);
+    this.target = new long[WORDS];
+    for (int i = 0; i < WORDS; i++) {
+      this.target[i] = (long) LONGS.get(bytes, i * Long.BYTES);
+    } // for
+  } // TargetValidator(BigInteger)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the target.
+   *
+   * @return the largest valid hash.
+   */
+  public BigInteger getTarget() {
+    byte[] bytes = new byte[HASH_BYTES];
+    for (int i = 0; i < WORDS; i++) {
+      LONGS.set(bytes, i * Long.BYTES, this.target[i]);
+    } // for
+    return new BigInteger(1, bytes);
+  } // getTarget()
+
+  /**
+   * Determine if a hash is at most the target.
+   *
+   * @param hash
+   *   The hash we're checking.
+   *
+   * @return true if the hash is valid and false otherwise.
+   */
+  public boolean isValid(Hash hash) {
+    if (hash.length() != HASH_BYTES) {
+      return false;
+    } // if
+    for (int i = 0; i < WORDS; i++) {
+      int cmp = Long.compareUnsigned(hash.getLong(i), this.target[i]);
+      if (cmp != 0) {
+        return cmp < 0;
+      } // if
+    } // for
+    return true;
+  } // isValid(Hash)
+
+  /**
+   * Determine if a hash, given as raw bytes, is at most the target.
+   *
+   * @param bytes
+   *   An array that holds the hash.
+   * @param offset
+   *   Where the hash starts in the array.
+   * @param length
+   *   The number of bytes in the hash.
+   *
+   * @return true if the hash is valid and false otherwise.
+   */
+  public boolean isValid(byte[] bytes, int offset, int length) {
+    if (length != HASH_BYTES) {
+      return false;
+    } // if
+    for (int i = 0; i < WORDS; i++) {
+      long word = (long) LONGS.get(bytes, offset + i * Long.BYTES);
+      int cmp = Long.compareUnsigned(word, this.target[i]);
+      if (cmp != 0) {
+        return cmp < 0;
+      } // if
+    } // for
+    return true;
+  } // isValid(byte[], int, int)
+
+  /**
+   * Determine quickly if a hash that starts with some bytes could
+   * be at most the target.
+   *
+   * @param firstWord
+   *   The first four bytes of the hash, big-endian.
+   *
+   * @return false if no hash that starts with those bytes is valid,
+   *   and true otherwise.
+   */
+  public boolean mayBeValid(int firstWord) {
+    return Integer.compareUnsigned(firstWord, (int) (this.target[0] >>> Integer.SIZE)) <= 0;
+  } // mayBeValid(int)
+
+  /**
+   * Convert to string form.
+   *
+   * @return a string describing the validator.
+   */
+  public String toString() {
+    return "at most " + this.getTarget().toString(16);
+  } // toString()
+} // class TargetValidator
@@ -1,7 +1,13 @@
 package edu.grinnell.csc207.blockchains;
 
+import java.nio.charset.StandardCharsets;
+
 /**
- * A simple transaction.
+ * A simple transaction. Transactions never change, so a transaction
+ * works out its hash code once and keeps the UTF-8 encodings of its
+ * names, for hashing and storing. Transactions that a store rebuilds,
+ * or that a chain mines, share the copies of the names and encodings
+ * that the chain's user dictionary keeps.
  *
  * @author
  *   Samuel A. Rebelsky
@@ -12,19 +18,34 @@ public class Transaction {
   // +--------+
 
   /**
-   * The source of a transfer.
+   * The source of a transfer (or the empty string for a deposit).
    */
-  private String source;
+  private final String source;
 
   /**
    * The target of a transfer.
    */
-  private String target;
+  private final String target;
+
+  /**
+   * The source, encoded in UTF-8.
+   */
+  private final byte[] sourceBytes;
+
+  /**
+   * The target, encoded in UTF-8.
+   */
+  private final byte[] targetBytes;
 
   /**
    * The amount transferred.
    */
-  private int amount;
+  private final int amount;
+
+  /**
+   * The hash code.
+   */
+  private final int code;
 
   // +--------------+------------------------------------------------
   // | Constructors |
@@ -42,10 +63,66 @@ public class Transaction {
    *   The funds transfered.
    */
   public Transaction(String src, String tgt, int amt) {
+    this(src, src.getBytes(StandardCharsets.UTF_8), tgt, tgt.getBytes(StandardCharsets.UTF_8),
+        amt);
+  } // Transaction(src)
+
+  /**
+   * Create a new Transaction from its names and their encodings, which
+   * the transaction keeps rather than copies.
+   *
+   * @param src
+   *   The source (or empty for a deposit).
+   * @param srcBytes
+   *   The source, encoded in UTF-8.
+   * @param tgt
+   *   The target.
+   * @param tgtBytes
+   *   The target, encoded in UTF-8.
+   * @param amt
+   *   The funds transfered.
+   */
+  Transaction(String src, byte[] srcBytes, String tgt, byte[] tgtBytes, int amt) {
     this.source = src;
     this.target = tgt;
+    this.sourceBytes = srcBytes;
+    this.targetBytes = tgtBytes;
     this.amount = amt;
-  } // Transaction(src)
+    this.code = 31 * (31 * src.hashCode() + tgt.hashCode()) + amt;
+  } // Transaction(String, byte[], String, byte[], int)
+
+  // +-----------------+---------------------------------------------
+  // | Package methods |
+  // +-----------------+
+
+  /**
+   * Get the source, encoded in UTF-8. The caller must not change the
+   * array.
+   *
+   * @return the bytes of the source.
+   */
+  byte[] sourceBytes() {
+    return this.sourceBytes;
+  } // sourceBytes()
+
+  /**
+   * Get the target, encoded in UTF-8. The caller must not change the
+   * array.
+   *
+   * @return the bytes of the target.
+   */
+  byte[] targetBytes() {
+    return this.targetBytes;
+  } // targetBytes()
+
+  /**
+   * Determine if this is a deposit.
+   *
+   * @return true if the source is empty and false otherwise.
+   */
+  boolean isDeposit() {
+    return this.source.isEmpty();
+  } // isDeposit()
 
   // +---------+-----------------------------------------------------
   // | Methods |
@@ -87,8 +164,8 @@ public class Transaction {
    */
   public String toString() {
     return String.format("[%s, Target: %s, Amount: %s]",
-        ("".equals(this.source)) ? "Deposit" : "Source: " + this.source,
-        this.target,
+        this.isDeposit() ? "Deposit" : "Source: " + this.getSource(),
+        this.getTarget(),
         this.amount);
   } // toString()
 
@@ -98,7 +175,7 @@ public class Transaction {
    * @return the hash code.
    */
   public int hashCode() {
-    return this.toString().hashCode();
+    return this.code;
   } // hashCode()
 
   /**
@@ -125,8 +202,10 @@ public class Transaction {
    *   and value.
    */
   public boolean equals(Transaction other) {
-    return other.source.equals(this.source)
-        && other.target.equals(this.target)
-        && other.amount == this.amount;
+    return other == this
+        || (other.code == this.code
+            && other.source.equals(this.source)
+            && other.target.equals(this.target)
+            && other.amount == this.amount);
   } // equals(Transaction)
 } // class Transaction
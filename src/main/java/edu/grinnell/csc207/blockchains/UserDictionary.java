@@ -0,0 +1,208 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The user names in one chain, each with a small int ID. Ledgers and
+ * other indexes keep arrays indexed by ID rather than maps keyed by
+ * name, and stores that rebuild transactions hand out the one copy of
+ * each name (and of its UTF-8 encoding) that the dictionary keeps, so
+ * a name that appears in many transactions is stored once.
+ *
+ * IDs are dense, start at 0, and are never reused, so a dictionary
+ * should serve a single chain. The empty name, which stands for the
+ * source of a deposit, is always ID 0. Looking up a known name takes
+ * no lock; adding a new one takes a short one.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+class UserDictionary {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The ID of the empty name.
+   */
+  static final int NOBODY = 0;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The ID of each name.
+   */
+  private ConcurrentHashMap<String, Integer> ids;
+
+  /**
+   * The ID of each name, by its UTF-8 encoding.
+   */
+  private ConcurrentHashMap<ByteBuffer, Integer> encoded;
+
+  /**
+   * The name with each ID. Slots past size are filled in under the
+   * lock; when the array fills, it is replaced by a larger copy.
+   */
+  private volatile String[] names;
+
+  /**
+   * The UTF-8 encoding of the name with each ID.
+   */
+  private volatile byte[][] encodings;
+
+  /**
+   * The number of names.
+   */
+  private int size;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a dictionary that holds only the empty name.
+   */
+  UserDictionary() {
+    this.ids = new ConcurrentHashMap<String, Integer>();
+    this.encoded = new ConcurrentHashMap<ByteBuffer, Integer>();
+    this.names = new String[64];
+    this.encodings = new byte[64][];
+    this.size = 0;
+    this.add("", new byte[0]);
+  } // UserDictionary()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Add a name, unless it is already there.
+   *
+   * @param name
+   *   The name.
+   * @param encoding
+   *   Its UTF-8 encoding.
+   *
+   * @return the ID of the name.
+   */
+  private int add(String name, byte[] encoding) {
+    synchronized (this.ids) {
+      Integer id = this.ids.get(name);
+      if (id != null) {
+        return id;
+      } // if
+      if (this.size == this.names.length) {
+        String[] names1 = Arrays.copyOf(this.names, 2 * this.size);
+        byte[][] encodings1 = Arrays.copyOf(this.encodings, 2 * this.size);
+        names1[this.size] = name;
+        encodings1[this.size] = encoding;
+        this.encodings = encodings1;
+        this.names = names1;
+      } else {
+        // Nobody reads past size until the ID is in ids, and putting
+        // it there publishes these writes.
+        this.encodings[this.size] = encoding;
+        this.names[this.size] = name;
+      } // if/else
+      this.encoded.put(ByteBuffer.wrap(encoding), this.size);
+      this.ids.put(name, this.size);
+      return this.size++;
+    } // synchronized
+  } // add(String, byte[])
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the ID of a name, adding the name if it is new.
+   *
+   * @param name
+   *   The name.
+   *
+   * @return the ID.
+   */
+  int id(String name) {
+    Integer id = this.ids.get(name);
+    return (id != null) ? id : this.add(name, name.getBytes(StandardCharsets.UTF_8));
+  } // id(String)
+
+  /**
+   * Get the ID of a name from its UTF-8 encoding, adding the name if
+   * it is new. A known name is found without decoding it.
+   *
+   * @param encoding
+   *   The encoding, which is not changed or kept.
+   *
+   * @return the ID.
+   */
+  int id(ByteBuffer encoding) {
+    Integer id = this.encoded.get(encoding);
+    if (id != null) {
+      return id;
+    } // if
+    byte[] bytes = new byte[encoding.remaining()];
+    encoding.get(encoding.position(), bytes);
+    return this.add(new String(bytes, StandardCharsets.UTF_8), bytes);
+  } // id(ByteBuffer)
+
+  /**
+   * Get the ID of a name, without adding it.
+   *
+   * @param name
+   *   The name.
+   *
+   * @return the ID, or -1 if the name is not in the dictionary.
+   */
+  int find(String name) {
+    return this.ids.getOrDefault(name, -1);
+  } // find(String)
+
+  /**
+   * Get the name with some ID.
+   *
+   * @param id
+   *   The ID.
+   *
+   * @return the name.
+   */
+  String name(int id) {
+    return this.names[id];
+  } // name(int)
+
+  /**
+   * Get the UTF-8 encoding of the name with some ID. The caller must
+   * not change the array.
+   *
+   * @param id
+   *   The ID.
+   *
+   * @return the bytes of the name.
+   */
+  byte[] encoding(int id) {
+    return this.encodings[id];
+  } // encoding(int)
+
+  /**
+   * Make a transaction between users in the dictionary. It shares the
+   * dictionary's copies of the names and their encodings.
+   *
+   * @param src
+   *   The ID of the source (or NOBODY for a deposit).
+   * @param tgt
+   *   The ID of the target.
+   * @param amt
+   *   The funds transfered.
+   *
+   * @return the transaction.
+   */
+  Transaction transaction(int src, int tgt, int amt) {
+    return new Transaction(this.name(src), this.encoding(src), this.name(tgt),
+        this.encoding(tgt), amt);
+  } // transaction(int, int, int)
+} // class UserDictionary
@@ -0,0 +1,196 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * The users who have received money in some run of blocks, kept up
+ * to date one block at a time. Each user is counted once for every
+ * transaction that pays them, so removing a block only forgets the
+ * users that no remaining block pays. Counts are kept in an array
+ * indexed by ID in the chain's user dictionary.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+class UserRegistry {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The names of the users.
+   */
+  private UserDictionary users;
+
+  /**
+   * The number of transactions that pay each user, by ID.
+   */
+  private int[] counts;
+
+  /**
+   * The number of users with a count above 0.
+   */
+  private int size;
+
+  /**
+   * The same users, in order.
+   */
+  private NavigableSet<String> sorted;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a registry with no users.
+   *
+   * @param users1
+   *   The names of the users.
+   */
+  UserRegistry(UserDictionary users1) {
+    this.users = users1;
+    this.counts = new int[16];
+    this.size = 0;
+    this.sorted = new TreeSet<String>();
+  } // UserRegistry(UserDictionary)
+
+  /**
+   * Create a registry with some users.
+   *
+   * @param users1
+   *   The names of the users.
+   * @param counts1
+   *   The number of transactions that pay each user. The registry
+   *   keeps a copy.
+   */
+  UserRegistry(UserDictionary users1, Map<String, Integer> counts1) {
+    this(users1);
+    for (Map.Entry<String, Integer> entry : counts1.entrySet()) {
+      int id = this.users.id(entry.getKey());
+      this.reserve(id);
+      this.counts[id] = entry.getValue();
+      this.size++;
+    } // for
+    this.sorted.addAll(counts1.keySet());
+  } // UserRegistry(UserDictionary, Map<String, Integer>)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Make room for the count of a user.
+   *
+   * @param id
+   *   The ID of the user.
+   */
+  private void reserve(int id) {
+    if (id >= this.counts.length) {
+      this.counts = Arrays.copyOf(this.counts, Math.max(id + 1, 2 * this.counts.length));
+    } // if
+  } // reserve(int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Add the users paid by a block.
+   *
+   * @param blk
+   *   The block.
+   */
+  void add(Block blk) {
+    for (Transaction tx : blk.getTransactions()) {
+      int id = this.users.id(tx.getTarget());
+      if (id == UserDictionary.NOBODY) {
+        continue;
+      } // if
+      this.reserve(id);
+      if (this.counts[id]++ == 0) {
+        this.sorted.add(tx.getTarget());
+        this.size++;
+      } // if
+    } // for
+  } // add(Block)
+
+  /**
+   * Remove the users paid by a block that was the last one added.
+   *
+   * @param blk
+   *   The block.
+   */
+  void remove(Block blk) {
+    for (Transaction tx : blk.getTransactions()) {
+      int id = this.users.id(tx.getTarget());
+      if (id != UserDictionary.NOBODY && --this.counts[id] == 0) {
+        this.sorted.remove(tx.getTarget());
+        this.size--;
+      } // if
+    } // for
+  } // remove(Block)
+
+  /**
+   * Determine how many users there are.
+   *
+   * @return the number of users.
+   */
+  int size() {
+    return this.size;
+  } // size()
+
+  /**
+   * Determine if someone is a user.
+   *
+   * @param user
+   *   The name to look for.
+   *
+   * @return true if the user is in the registry and false otherwise.
+   */
+  boolean contains(String user) {
+    int id = this.users.find(user);
+    return id > UserDictionary.NOBODY && id < this.counts.length && this.counts[id] > 0;
+  } // contains(String)
+
+  /**
+   * Get the number of transactions that pay each user.
+   *
+   * @return the counts, by name.
+   */
+  Map<String, Integer> counts() {
+    HashMap<String, Integer> result = new HashMap<String, Integer>();
+    for (String user : this.sorted) {
+      result.put(user, this.counts[this.users.find(user)]);
+    } // for
+    return result;
+  } // counts()
+
+  /**
+   * Get some of the users that come after some name, in order.
+   *
+   * @param after
+   *   The name to start after, or null to start at the first user. It
+   *   need not be a user.
+   * @param limit
+   *   The most users to get.
+   *
+   * @return the users.
+   */
+  List<String> page(String after, int limit) {
+    ArrayList<String> page = new ArrayList<String>();
+    Iterator<String> rest = (after == null)
+        ? this.sorted.iterator()
+        : this.sorted.tailSet(after, false).iterator();
+    while (page.size() < limit && rest.hasNext()) {
+      page.add(rest.next());
+    } // while
+    return page;
+  } // page(String, int)
+} // class UserRegistry
@@ -2,13 +2,18 @@ package edu.grinnell.csc207.main;
 
 import edu.grinnell.csc207.blockchains.Block;
 import edu.grinnell.csc207.blockchains.BlockChain;
+import edu.grinnell.csc207.blockchains.FileBlockStore;
 import edu.grinnell.csc207.blockchains.HashValidator;
+import edu.grinnell.csc207.blockchains.LeadingZerosValidator;
+import edu.grinnell.csc207.blockchains.Miner;
 import edu.grinnell.csc207.blockchains.Transaction;
 
 import edu.grinnell.csc207.util.IOUtils;
 
 import java.io.PrintWriter;
+import java.nio.file.Path;
 import java.util.Iterator;
+import java.util.List;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 
@@ -29,6 +34,11 @@ public class BlockChainUI {
    */
   static final int VALIDATOR_BYTES = 3;
 
+  /**
+   * The most blocks the find command prints.
+   */
+  static final int FIND_LIMIT = 10;
+
   // +---------+-----------------------------------------------------
   // | Helpers |
   // +---------+
@@ -46,6 +56,7 @@ public class BlockChainUI {
         append: appends a new block onto the end of the chain
         remove: removes the last block from the end of the chain
         check: checks that the block chain is valid
+        find: finds blocks by the start of their hash
         users: prints a list of users
         balance: finds a user's balance
         transactions: prints out the chain of transactions
@@ -62,26 +73,24 @@ public class BlockChainUI {
    * Run the UI.
    *
    * @param args
-   *   Command-line arguments (currently ignored).
+   *   Command-line arguments: optionally, a directory to keep the
+   *   blocks in, so that the chain outlasts the program. Each block
+   *   is synced to disk as soon as it is appended.
    */
   public static void main(String[] args) throws Exception {
     PrintWriter pen = new PrintWriter(System.out, true);
     BufferedReader eyes = new BufferedReader(new InputStreamReader(System.in));
 
     // Set up our blockchain.
-    HashValidator validator =
-        (h) -> {
-          if (h.length() < VALIDATOR_BYTES) {
-            return false;
-          } // if
-          for (int v = 0; v < VALIDATOR_BYTES; v++) {
-            if (h.get(v) != 0) {
-              return false;
-            } // if
-          } // for
-          return true;
-        };
-    BlockChain chain = new BlockChain(validator);
+    HashValidator validator = new LeadingZerosValidator(VALIDATOR_BYTES * Byte.SIZE);
+    FileBlockStore store = null;
+    BlockChain chain;
+    if (args.length > 0) {
+      store = new FileBlockStore(Path.of(args[0]));
+      chain = new BlockChain(validator, new Miner(), store, Path.of(args[0], "snapshots"));
+    } else {
+      chain = new BlockChain(validator);
+    } // if/else
 
     instructions(pen);
 
@@ -115,6 +124,9 @@ public class BlockChainUI {
             nonce
           );
           chain.append(b);
+          if (store != null) {
+            store.sync();
+          } // if
           pen.printf("Appended: %s\n", b.toString());
           break;
 
@@ -139,6 +151,23 @@ public class BlockChainUI {
           } // try-catch
           break;
 
+        case "find":
+          String prefix = IOUtils.readLine(pen, eyes, "Start of hash: ");
+          try {
+            List<Block> found = chain.findByHashPrefix(prefix, FIND_LIMIT + 1);
+            for (int i = 0; i < found.size() && i < FIND_LIMIT; i++) {
+              pen.printf("%s\n", found.get(i).toString());
+            } // for
+            if (found.isEmpty()) {
+              pen.println("No block has a hash that starts that way.");
+            } else if (found.size() > FIND_LIMIT) {
+              pen.println("... and more.");
+            } // if/else
+          } catch (IllegalArgumentException ex) {
+            pen.println(ex.getMessage());
+          } // try-catch
+          break;
+
         case "help":
           instructions(pen);
           break;
@@ -178,6 +207,10 @@ public class BlockChainUI {
       } // switch
     } // while
 
+    if (store != null) {
+      chain.snapshot();
+      store.close();
+    } // if
     pen.printf("\nGoodbye\n");
     eyes.close();
     pen.close();
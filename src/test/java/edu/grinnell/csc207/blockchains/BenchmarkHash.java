@@ -0,0 +1,137 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+
+/**
+ * Times the things we do most with 32-byte hashes, for Hash (four
+ * longs with a cached hash code) and, for comparison, for the same
+ * bytes kept in an array (a ByteBuffer, which hashes and compares its
+ * bytes each time, as Hash did when it kept an array). This is not a
+ * test; run it by hand with
+ *
+ *   mvn test-compile
+ *   java -cp target/classes:target/test-classes \
+ *     edu.grinnell.csc207.blockchains.BenchmarkHash
+ *
+ * Each line gives the median nanoseconds per operation over several
+ * runs.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+public class BenchmarkHash {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of distinct hashes.
+   */
+  static final int COUNT = 1 << 16;
+
+  /**
+   * The number of operations in one run.
+   */
+  static final int OPERATIONS = 1 << 22;
+
+  /**
+   * The number of runs to take the median of, after one to warm up.
+   */
+  static final int RUNS = 5;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * Something every run writes to, so that no work is optimized away.
+   */
+  static long sink;
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Something to time.
+   */
+  interface Operation {
+    /**
+     * Do the operation once.
+     *
+     * @param i
+     *   Which time this is.
+     *
+     * @return anything that depends on the work.
+     */
+    long run(int i);
+  } // interface Operation
+
+  /**
+   * Time an operation.
+   *
+   * @param name
+   *   What to call it.
+   * @param op
+   *   The operation.
+   */
+  static void time(String name, Operation op) {
+    double[] runs = new double[RUNS + 1];
+    for (int r = 0; r < runs.length; r++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < OPERATIONS; i++) {
+        sink += op.run(i);
+      } // for
+      runs[r] = (double) (System.nanoTime() - start) / OPERATIONS;
+    } // for
+    double[] measured = Arrays.copyOfRange(runs, 1, runs.length);
+    Arrays.sort(measured);
+    System.out.printf("%-28s %6.1f%n", name, measured[RUNS / 2]);
+  } // time(String, Operation)
+
+  // +------+--------------------------------------------------------
+  // | Main |
+  // +------+
+
+  /**
+   * Time every operation.
+   *
+   * @param args
+   *   Ignored.
+   */
+  public static void main(String[] args) {
+    Random random = new Random(207);
+    byte[][] raw = new byte[COUNT][32];
+    Hash[] hashes = new Hash[COUNT];
+    Hash[] copies = new Hash[COUNT];
+    ByteBuffer[] buffers = new ByteBuffer[COUNT];
+    ByteBuffer[] bufferCopies = new ByteBuffer[COUNT];
+    HashMap<Hash, Integer> byHash = new HashMap<Hash, Integer>();
+    HashMap<ByteBuffer, Integer> byBuffer = new HashMap<ByteBuffer, Integer>();
+    for (int i = 0; i < COUNT; i++) {
+      random.nextBytes(raw[i]);
+      hashes[i] = new Hash(raw[i]);
+      copies[i] = new Hash(raw[i]);
+      buffers[i] = ByteBuffer.wrap(raw[i]);
+      bufferCopies[i] = ByteBuffer.wrap(raw[i].clone());
+      byHash.put(hashes[i], i);
+      byBuffer.put(buffers[i], i);
+    } // for
+    int mask = COUNT - 1;
+
+    System.out.println("operation                        ns");
+    time("Hash.equals", (i) -> hashes[i & mask].equals(copies[i & mask]) ? 1 : 0);
+    time("array equals", (i) -> buffers[i & mask].equals(bufferCopies[i & mask]) ? 1 : 0);
+    time("Hash.hashCode", (i) -> copies[i & mask].hashCode());
+    time("array hashCode", (i) -> bufferCopies[i & mask].hashCode());
+    time("HashMap<Hash> get", (i) -> byHash.get(copies[(i * 31) & mask]));
+    time("HashMap<array> get", (i) -> byBuffer.get(bufferCopies[(i * 31) & mask]));
+    time("new Hash from digest", (i) -> new Hash(raw[i & mask]).hashCode());
+    ScratchHash scratch = new ScratchHash(raw[0]);
+    time("ScratchHash.hashCode", (i) -> scratch.hashCode());
+  } // main(String[])
+} // class BenchmarkHash
@@ -0,0 +1,154 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+
+/**
+ * Times the ways we can hash a block prefix followed by a nonce, so
+ * the choice that BlockSha256.beatsJdk(int) makes can be checked on a
+ * given machine. This is not a test; run it by hand with
+ *
+ *   mvn test-compile
+ *   java -cp target/classes:target/test-classes \
+ *     edu.grinnell.csc207.blockchains.BenchmarkSha256
+ *
+ * and again with -XX:-UseSHA to see the other case.
+ * Each line gives the median nanoseconds per nonce over several runs,
+ * for the engine, for the JDK digest fed the whole prefix, and for
+ * the JDK digest cloned from a copy that was fed the prefix once.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+public class BenchmarkSha256 {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The prefix lengths to time, in bytes.
+   */
+  static final int[] LENGTHS = {20, 45, 100, 193, 400, 1000};
+
+  /**
+   * The number of nonces in one run.
+   */
+  static final int NONCES = 200_000;
+
+  /**
+   * The number of runs to take the median of, after one to warm up.
+   */
+  static final int RUNS = 5;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * Something every run writes to, so that no work is optimized away.
+   */
+  static int sink;
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Something that hashes a prefix with a nonce.
+   */
+  interface Hasher {
+    /**
+     * Hash the prefix with a nonce.
+     *
+     * @param nonce
+     *   The nonce.
+     *
+     * @return part of the digest.
+     */
+    int hash(long nonce) throws Exception;
+  } // interface Hasher
+
+  /**
+   * Time a hasher.
+   *
+   * @param hasher
+   *   The hasher.
+   *
+   * @return the median nanoseconds per nonce.
+   */
+  static double time(Hasher hasher) throws Exception {
+    double[] runs = new double[RUNS + 1];
+    for (int r = 0; r < runs.length; r++) {
+      long start = System.nanoTime();
+      for (long nonce = 0; nonce < NONCES; nonce++) {
+        sink += hasher.hash(nonce);
+      } // for
+      runs[r] = (double) (System.nanoTime() - start) / NONCES;
+    } // for
+    double[] measured = Arrays.copyOfRange(runs, 1, runs.length);
+    Arrays.sort(measured);
+    return measured[RUNS / 2];
+  } // time(Hasher)
+
+  /**
+   * Feed a nonce to a digest, big-endian.
+   *
+   * @param md
+   *   The digest.
+   * @param scratch
+   *   Eight bytes to encode the nonce in.
+   * @param nonce
+   *   The nonce.
+   */
+  static void updateLong(MessageDigest md, byte[] scratch, long nonce) {
+    for (int b = Long.BYTES - 1; b >= 0; b--) {
+      scratch[b] = (byte) nonce;
+      nonce >>>= Byte.SIZE;
+    } // for
+    md.update(scratch);
+  } // updateLong(MessageDigest, byte[], long)
+
+  // +------+--------------------------------------------------------
+  // | Main |
+  // +------+
+
+  /**
+   * Time every way of hashing for every prefix length.
+   *
+   * @param args
+   *   Ignored.
+   */
+  public static void main(String[] args) throws Exception {
+    Random random = new Random(207);
+    System.out.println("prefix  engine      jdk    clone  beatsJdk");
+    for (int length : LENGTHS) {
+      byte[] prefix = new byte[length];
+      random.nextBytes(prefix);
+      byte[] scratch = new byte[Long.BYTES];
+
+      BlockSha256 engine = new BlockSha256(prefix);
+      double ours = time(engine::hash);
+
+      MessageDigest md = MessageDigest.getInstance("sha-256");
+      double jdk = time((nonce) -> {
+        md.reset();
+        md.update(prefix);
+        updateLong(md, scratch, nonce);
+        return md.digest()[0];
+      });
+
+      MessageDigest fed = MessageDigest.getInstance("sha-256");
+      fed.update(prefix);
+      double clone = time((nonce) -> {
+        MessageDigest copy = (MessageDigest) fed.clone();
+        updateLong(copy, scratch, nonce);
+        return copy.digest()[0];
+      });
+
+      System.out.printf("%6d %7.0f %8.0f %8.0f  %s%n", length, ours, jdk, clone,
+          BlockSha256.beatsJdk(length));
+    } // for
+  } // main(String[])
+} // class BenchmarkSha256
@@ -1,12 +1,21 @@
 package edu.grinnell.csc207.blockchains;
 
+import java.lang.management.ManagementFactory;
+
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -228,6 +237,150 @@ public class TestBlock {
         "correct hash in validated block");
   } // validatedHashTest()
 
+  /**
+   * Ensure that hashing from a cached prefix gives the same hash as
+   * hashing the whole block, even when the prefix spans many chunks.
+   */
+  @Test
+  public void midstateHashTest() {
+    Transaction t = new Transaction("Source".repeat(40), "Target".repeat(30), 99);
+    Hash ph = new Hash(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+    Block b = new Block(12, t, ph, 0);
+    BlockHasher hasher = new BlockHasher(b);
+    for (long nonce = 0; nonce < 100; nonce++) {
+      assertEquals(b.computeHash(nonce), hasher.hash(nonce),
+          "hash with nonce " + nonce);
+    } // for
+    assertArrayEquals(expectedHash(b), hasher.hash(0).getBytes(),
+        "correct hash from prefix");
+  } // midstateHashTest()
+
+  /**
+   * Ensure that hashing a template block with new nonces does not
+   * allocate.
+   */
+  @Test
+  public void hashAllocationTest() {
+    assumeTrue(ManagementFactory.getThreadMXBean()
+        instanceof com.sun.management.ThreadMXBean,
+        "allocation counters are available");
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported(),
+        "allocation counters are supported");
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    Transaction t = new Transaction("Alice", "Bob", 42);
+    Hash ph = new Hash(new byte[32]);
+    BlockHasher hasher = new BlockHasher(new Block(3, t, ph, 0));
+    HashValidator v = (h) -> h.get(0) == 0 && h.get(1) == 0 && h.get(2) == 0;
+
+    // Warm up, so that the measurement doesn't include class loading.
+    for (long nonce = 0; nonce < 20_000; nonce++) {
+      v.isValid(hasher.hash(nonce));
+    } // for
+
+    long id = Thread.currentThread().getId();
+    long before = threads.getThreadAllocatedBytes(id);
+    for (long nonce = 0; nonce < 200_000; nonce++) {
+      v.isValid(hasher.hash(nonce));
+    } // for
+    long allocated = threads.getThreadAllocatedBytes(id) - before;
+    // A single Hash per attempt would be several megabytes.
+    assertTrue(allocated < 4096,
+        "allocated " + allocated + " bytes for 200000 hashes");
+
+    // The same goes for validating with a built-in validator.
+    HashValidator zeros = new LeadingZerosValidator(24);
+    for (long nonce = 0; nonce < 20_000; nonce++) {
+      hasher.isValid(nonce, zeros);
+    } // for
+    before = threads.getThreadAllocatedBytes(id);
+    for (long nonce = 0; nonce < 200_000; nonce++) {
+      hasher.isValid(nonce, zeros);
+    } // for
+    allocated = threads.getThreadAllocatedBytes(id) - before;
+    assertTrue(allocated < 4096,
+        "allocated " + allocated + " bytes for 200000 validations");
+
+    // And with a validator that only looks at a Hash.
+    for (long nonce = 0; nonce < 20_000; nonce++) {
+      hasher.isValid(nonce, v);
+    } // for
+    before = threads.getThreadAllocatedBytes(id);
+    for (long nonce = 0; nonce < 200_000; nonce++) {
+      hasher.isValid(nonce, v);
+    } // for
+    allocated = threads.getThreadAllocatedBytes(id) - before;
+    assertTrue(allocated < 4096,
+        "allocated " + allocated + " bytes for 200000 validations with a lambda");
+
+    // And for a block whose prefix fills more than a SHA-256 chunk.
+    Transaction long1 = new Transaction("A".repeat(80), "B".repeat(80), 42);
+    BlockHasher longHasher = new BlockHasher(new Block(3, long1, ph, 0));
+    for (long nonce = 0; nonce < 20_000; nonce++) {
+      v.isValid(longHasher.hash(nonce));
+    } // for
+    before = threads.getThreadAllocatedBytes(id);
+    for (long nonce = 0; nonce < 200_000; nonce++) {
+      v.isValid(longHasher.hash(nonce));
+    } // for
+    allocated = threads.getThreadAllocatedBytes(id) - before;
+    assertTrue(allocated < 4096,
+        "allocated " + allocated + " bytes for 200000 hashes with long names");
+  } // hashAllocationTest()
+
+  /**
+   * Ensure that names are hashed as UTF-8, whatever the platform's
+   * default encoding.
+   */
+  @Test
+  public void utf8HashTest() {
+    Transaction t = new Transaction("Zo\u00EB", "\u0141ukasz", 12);
+    Hash ph = new Hash(new byte[] {1, 2});
+    Block b = new Block(2, t, ph, 5);
+    md.update(intToBytes(2));
+    md.update("Zo\u00EB".getBytes(StandardCharsets.UTF_8));
+    md.update("\u0141ukasz".getBytes(StandardCharsets.UTF_8));
+    md.update(intToBytes(12));
+    md.update(ph.getBytes());
+    md.update(longToBytes(5));
+    assertArrayEquals(md.digest(), b.getHash().getBytes(), "hash of non-ASCII names");
+  } // utf8HashTest()
+
+  /**
+   * Ensure that a batch block hashes its Merkle root, and that the
+   * root depends on every transaction and their order.
+   */
+  @Test
+  public void batchHashTest() {
+    Transaction t1 = new Transaction("", "A", 10);
+    Transaction t2 = new Transaction("A", "B", 5);
+    Transaction t3 = new Transaction("B", "C", 1);
+    Hash ph = new Hash(new byte[] {1, 2, 3});
+    Block b = new Block(4, List.of(t1, t2, t3), ph, 77);
+
+    md.update(intToBytes(4));
+    md.update(MerkleTree.root(List.of(t1, t2, t3)).getBytes());
+    md.update(intToBytes(3));
+    md.update(ph.getBytes());
+    md.update(longToBytes(77));
+    assertArrayEquals(md.digest(), b.getHash().getBytes(), "correct batch hash");
+    assertEquals(List.of(t1, t2, t3), b.getTransactions(), "transactions in batch");
+    assertEquals(t1, b.getTransaction(), "first transaction in batch");
+    assertEquals(b.getHash(), b.withNonce(77).getHash(), "copy of batch block");
+
+    Hash root = MerkleTree.root(List.of(t1, t2, t3));
+    assertNotEquals(root, MerkleTree.root(List.of(t2, t1, t3)), "order matters");
+    assertNotEquals(root, MerkleTree.root(List.of(t1, t2)), "every transaction matters");
+    assertNotEquals(root, MerkleTree.root(List.of(t1, t2, t3, t3)),
+        "repeating the last transaction matters");
+    assertNotEquals(b.getHash(), new Block(4, t1, ph, 77).getHash(),
+        "batch of one differs from single transaction");
+    assertThrows(IllegalArgumentException.class,
+        () -> new Block(4, List.of(), ph, 0), "empty batch");
+  } // batchHashTest()
+
   /**
    * Ensure that we can create the standard initial block.
    */
@@ -1,17 +1,29 @@
 package edu.grinnell.csc207.blockchains;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 
 /**
@@ -24,6 +36,44 @@ public class TestBlockChain {
   // | Utilities |
   // +-----------+
 
+  /**
+   * Wrap a store so as to count the blocks read from it and the times
+   * it is synced.
+   *
+   * @param store
+   *   The store.
+   * @param reads
+   *   Where to count the reads (in reads[0]) and the syncs (in
+   *   reads[1]).
+   *
+   * @return a store that passes everything on to store.
+   */
+  static BlockStore counting(BlockStore store, int[] reads) {
+    return new BlockStore() {
+      public int size() {
+        return store.size();
+      } // size()
+
+      public Block get(int index) {
+        reads[0]++;
+        return store.get(index);
+      } // get(int)
+
+      public void add(Block blk) {
+        store.add(blk);
+      } // add(Block)
+
+      public void removeLast() {
+        store.removeLast();
+      } // removeLast()
+
+      public void sync() throws IOException {
+        reads[1]++;
+        store.sync();
+      } // sync()
+    };
+  } // counting(BlockStore, int[])
+
   /**
    * Get all the users as a sorted array.
    */
@@ -159,6 +209,12 @@ public class TestBlockChain {
     assertTrue(blocks.hasNext(), "hasNext before block 3");
     assertEquals(block3, blocks.next(), "block 3");
     assertFalse(blocks.hasNext(), "hasNext at end");
+
+    assertEquals(block1, chain.getBlock(1), "getBlock(1)");
+    assertEquals(block3, chain.getBlock(3), "getBlock(3)");
+    assertEquals(0, chain.getBlock(0).getNum(), "getBlock(0)");
+    assertThrows(IndexOutOfBoundsException.class, () -> chain.getBlock(4),
+        "getBlock past the end");
   } // testIterateBlocks()
 
   /**
@@ -277,6 +333,85 @@ public class TestBlockChain {
     assertEquals(20, chain.balance("C"), "C's eighth balance");
   } // testBalances()
 
+  /**
+   * Check balances as of earlier blocks.
+   */
+  @Test
+  public void testBalanceHistory() {
+    HashValidator v =
+        (hash) ->
+            (hash.length() >= 2) && (hash.get(0) == 66) && (hash.get(1) == 66);
+    BlockChain chain = new BlockChain(v);
+
+    chain.append(chain.mine(new Transaction("", "A", 100)));
+    chain.append(chain.mine(new Transaction("", "B", 50)));
+    chain.append(chain.mine(List.of(
+        new Transaction("A", "B", 30),
+        new Transaction("B", "A", 10))));
+    chain.append(chain.mine(new Transaction("", "C", 5)));
+    chain.append(chain.mine(new Transaction("B", "C", 70)));
+
+    int[] expectedA = {0, 100, 100, 80, 80, 80};
+    int[] expectedB = {0, 0, 50, 70, 70, 0};
+    int[] expectedC = {0, 0, 0, 0, 5, 75};
+    for (int n = 0; n < chain.getSize(); n++) {
+      assertEquals(expectedA[n], chain.balance("A", n), "A's balance as of block " + n);
+      assertEquals(expectedB[n], chain.balance("B", n), "B's balance as of block " + n);
+      assertEquals(expectedC[n], chain.balance("C", n), "C's balance as of block " + n);
+    } // for
+    assertEquals(0, chain.balance("D", 5), "D's balance");
+    assertThrows(IndexOutOfBoundsException.class, () -> chain.balance("A", 6),
+        "balance after the last block");
+
+    assertTrue(chain.removeLast(), "removing B's payment to C");
+    assertEquals(70, chain.balance("B", 4), "B's balance after removing a block");
+    chain.append(chain.mine(new Transaction("B", "A", 20)));
+    assertEquals(50, chain.balance("B", 5), "B's balance after a new block");
+    assertEquals(100, chain.balance("A", 5), "A's balance after a new block");
+    assertEquals(5, chain.balance("C", 5), "C's balance after a new block");
+    assertEquals(80, chain.balance("A", 4), "A's earlier balance after a new block");
+  } // testBalanceHistory()
+
+  /**
+   * Page through the blocks involving a user.
+   */
+  @Test
+  public void testHistory() {
+    HashValidator v =
+        (hash) ->
+            (hash.length() >= 2) && (hash.get(0) == 67) && (hash.get(1) == 67);
+    BlockChain chain = new BlockChain(v);
+
+    chain.append(chain.mine(new Transaction("", "A", 100)));
+    for (int i = 0; i < 10; i++) {
+      chain.append(chain.mine(new Transaction("A", (i % 3 == 0) ? "B" : "C", 1)));
+    } // for
+    chain.append(chain.mine(List.of(
+        new Transaction("B", "D", 1),
+        new Transaction("B", "C", 1))));
+
+    assertEquals(5, chain.historySize("B"), "blocks involving B");
+    assertEquals(0, chain.historySize("E"), "blocks involving E");
+    assertTrue(chain.history("E", 0, 10).isEmpty(), "E's history");
+
+    List<Block> page = chain.history("B", 0, 2);
+    assertEquals(2, page.size(), "size of B's first page");
+    assertEquals(2, page.get(0).getNum(), "first block involving B");
+    assertEquals(5, page.get(1).getNum(), "second block involving B");
+    page = chain.history("B", page.get(1).getNum() + 1, 2);
+    assertEquals(8, page.get(0).getNum(), "third block involving B");
+    assertEquals(11, page.get(1).getNum(), "fourth block involving B");
+    page = chain.history("B", page.get(1).getNum() + 1, 2);
+    assertEquals(1, page.size(), "size of B's last page");
+    assertEquals(12, page.get(0).getNum(), "last block involving B");
+    assertTrue(chain.history("B", 13, 2).isEmpty(), "past B's history");
+
+    assertTrue(chain.removeLast(), "removing the batch");
+    assertEquals(4, chain.historySize("B"), "blocks involving B after removal");
+    assertEquals(0, chain.historySize("D"), "blocks involving D after removal");
+    assertEquals(11, chain.history("A", 0, 100).size(), "blocks involving A");
+  } // testHistory()
+
   /**
    * Test the list of users.
    */
@@ -315,6 +450,45 @@ public class TestBlockChain {
         "A-E, with extra C and D");
   } // testUsers()
 
+  /**
+   * Test counting, finding, and paging through users as blocks come
+   * and go.
+   */
+  @Test
+  public void testUserRegistry() {
+    HashValidator v =
+        (hash) ->
+            (hash.length() >= 2) && (hash.get(0) == 65) && (hash.get(1) == 65);
+    BlockChain chain = new BlockChain(v);
+    assertEquals(0, chain.userCount(), "no users");
+    assertFalse(chain.containsUser(""), "the genesis block has no user");
+
+    chain.append(chain.mine(new Transaction("", "C", 100)));
+    chain.append(chain.mine(List.of(
+        new Transaction("", "A", 100),
+        new Transaction("C", "B", 10),
+        new Transaction("C", "E", 10))));
+    chain.append(chain.mine(new Transaction("A", "D", 10)));
+    chain.append(chain.mine(new Transaction("A", "B", 10)));
+    assertEquals(5, chain.userCount(), "five users");
+    assertTrue(chain.containsUser("D"), "D is a user");
+    assertFalse(chain.containsUser("F"), "F is not a user");
+
+    Iterator<String> page = chain.users("B");
+    assertEquals("C", page.next(), "first user after B");
+    assertEquals("D", page.next(), "second user after B");
+    assertEquals("E", chain.users("D").next(), "first user after D");
+    assertEquals("A", chain.users("").next(), "first user after nothing");
+    assertFalse(chain.users("E").hasNext(), "no users after E");
+
+    assertTrue(chain.removeLast(), "removing second payment to B");
+    assertTrue(chain.containsUser("B"), "B is still paid by a batch");
+    assertTrue(chain.removeLast(), "removing payment to D");
+    assertFalse(chain.containsUser("D"), "D is gone");
+    assertEquals(4, chain.userCount(), "four users");
+    assertArrayEquals(new String[] {"A", "B", "C", "E"}, users(chain), "A-C and E");
+  } // testUserRegistry()
+
   /**
    * Test a long valid sequence.
    */
@@ -390,14 +564,13 @@ public class TestBlockChain {
     chain.append(chain.mine(new Transaction("", "B", 100)));
     chain.append(chain.mine(new Transaction("B", "A", 50)));
 
-    // Add an invalid transaction
-    chain.append(chain.mine(new Transaction("B", "A", 100)));
-    assertFalse(chain.isCorrect(), "B transferred too much");
-    assertCheckFails(chain, "B transferred too much");
-
-    // Remove that transaction.
-    assertTrue(chain.removeLast(), "removing invalid transaction");
-    assertTrue(chain.isCorrect(), "after removing invalid transaction");
+    // Try to add an invalid transaction
+    assertAppendFails(chain, chain.mine(new Transaction("B", "A", 100)),
+        "B transferred too much");
+    assertEquals(4, chain.getSize(), "after rejecting invalid transaction");
+    assertEquals(50, chain.balance("B"), "B's balance after rejected transfer");
+    assertEquals(150, chain.balance("A"), "A's balance after rejected transfer");
+    assertTrue(chain.isCorrect(), "after rejecting invalid transaction");
     chain.check();
 
     // Add a valid transaction.
@@ -405,37 +578,27 @@ public class TestBlockChain {
     assertTrue(chain.isCorrect(), "added valid transaction");
     chain.check();
 
-    // Add an invalid transaction and then a valid transaction.
-    chain.append(chain.mine(new Transaction("B", "A", 200)));
-    chain.append(chain.mine(new Transaction("A", "C", 10)));
-    assertFalse(chain.isCorrect(), "B transferred too much");
-    assertCheckFails(chain, "B transferred too much");
+    // Try a different invalid transaction
+    assertAppendFails(chain, chain.mine(new Transaction("D", "A", 10)), "D has no money");
+    assertEquals(0, chain.balance("D"), "D's balance after rejected transfer");
+
+    // And another
+    assertAppendFails(chain, chain.mine(new Transaction("A", "B", -10)), "Negative transfer");
+    assertEquals(140, chain.balance("A"), "A's balance after negative transfer");
 
     // Remove the valid transaction.
     assertTrue(chain.removeLast(), "removing valid transaction");
-    assertFalse(chain.isCorrect(), "B transferred too much");
-    assertCheckFails(chain, "B transferred too much");
-
-    // Remove the invalid transaction
-    assertTrue(chain.removeLast(), "removing invalid transaction");
-    assertTrue(chain.isCorrect(), "after removing invalid transaction");
+    assertEquals(150, chain.balance("A"), "A's balance after removing transfer");
+    assertEquals(0, chain.balance("C"), "C's balance after removing transfer");
+    assertTrue(chain.isCorrect(), "after removing valid transaction");
     chain.check();
 
-    // Add a different invalid transaction
-    chain.append(chain.mine(new Transaction("D", "A", 10)));
-    assertFalse(chain.isCorrect(), "D has no money");
-    assertCheckFails(chain, "D has no money");
-    assertTrue(chain.removeLast(), "removing invalid transaction");
-    assertTrue(chain.isCorrect(), "after removing invalid transaction");
-    chain.check();
-
-    // And another
-    chain.append(chain.mine(new Transaction("A", "B", -10)));
-    assertFalse(chain.isCorrect(), "Negative transfer");
-    assertCheckFails(chain, "Negative transfer");
-    assertTrue(chain.removeLast(), "removing invalid transaction");
-    assertTrue(chain.isCorrect(), "after removing invalid transaction");
-    chain.check();
+    // An overdraft that sneaks into the chain is still caught by check.
+    chain.append(chain.mine(new Transaction("B", "A", 50)));
+    Block last = chain.getBlock(chain.getSize() - 1);
+    last.transaction = new Transaction("B", "A", 100);
+    assertFalse(chain.isCorrect(), "B transferred too much");
+    assertCheckFails(chain, "B transferred too much");
   } // testInvalidTransactions()
 
   /**
@@ -458,9 +621,503 @@ public class TestBlockChain {
     Iterator<Block> blocks = chain.blocks();
     blocks.next();
     blocks.next().transaction = new Transaction("", "F", 1000);
-    assertEquals(1010, chain.balance("F"), "F's balance in modified chain");
-    assertFalse(chain.isCorrect(), "modified chain is incorrect");
-    assertCheckFails(chain, "modified chain is incorrect");
+    assertEquals(110, chain.balance("F"), "F's balance as appended");
+    assertTrue(chain.isCorrect(), "modified block was already checked");
+    assertThrows(Exception.class, () -> chain.checkAll(), "modified chain is incorrect");
+    assertFalse(chain.isCorrect(), "modified chain is incorrect after checking all");
+    assertCheckFails(chain, "modified chain is incorrect after checking all");
   } // testModifiedChain()
 
+  /**
+   * Check reports the first problem in a long chain, whatever kind
+   * of problem it is.
+   */
+  @Test
+  public void testCheckReportsFirst() {
+    BlockChain chain = new BlockChain((hash) -> true, new Miner(1, true));
+    chain.append(chain.mine(new Transaction("", "A", 1000)));
+    for (int i = 0; i < 200; i++) {
+      chain.append(chain.mine(new Transaction("A", "B", 1)));
+    } // for
+    assertTrue(chain.isCorrect(), "long chain is correct");
+
+    chain.getBlock(150).nonce++;
+    Exception ex = assertThrows(Exception.class, () -> chain.checkAll());
+    assertEquals("Block 150: hash is inconsistent", ex.getMessage(), "one bad hash");
+
+    chain.getBlock(120).transaction = new Transaction("B", "A", 1000);
+    ex = assertThrows(Exception.class, () -> chain.checkAll());
+    assertEquals("Block 120: tx causes user 'B' to drop below 0 balance", ex.getMessage(),
+        "an overdraft before a bad hash");
+
+    chain.getBlock(40).nonce++;
+    ex = assertThrows(Exception.class, () -> chain.checkAll());
+    assertEquals("Block 40: hash is inconsistent", ex.getMessage(),
+        "a bad hash before an overdraft");
+  } // testCheckReportsFirst()
+
+  /**
+   * Check only verifies blocks appended since the last check, and
+   * forgets verified blocks that are removed.
+   */
+  @Test
+  public void testCheckpoints() throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true, new Miner(1, true));
+    chain.append(chain.mine(new Transaction("", "A", 100)));
+    chain.append(chain.mine(new Transaction("A", "B", 10)));
+    chain.check();
+
+    chain.getBlock(2).nonce++;
+    chain.check();
+    assertThrows(Exception.class, () -> chain.checkAll(), "tampered checked block");
+    chain.getBlock(2).nonce--;
+    chain.check();
+
+    chain.append(chain.mine(new Transaction("A", "C", 20)));
+    chain.getBlock(3).nonce++;
+    Exception ex = assertThrows(Exception.class, () -> chain.check());
+    assertEquals("Block 3: hash is inconsistent", ex.getMessage(), "tampered new block");
+    chain.getBlock(3).nonce--;
+    chain.check();
+
+    // Remove verified blocks, then replace them with different ones.
+    assertTrue(chain.removeLast(), "removing block 3");
+    assertTrue(chain.removeLast(), "removing block 2");
+    chain.append(chain.mine(new Transaction("A", "C", 90)));
+    chain.append(chain.mine(new Transaction("C", "B", 90)));
+    chain.check();
+    assertEquals(90, chain.balance("B"), "B's balance");
+    chain.getBlock(3).transaction = new Transaction("C", "B", 91);
+    ex = assertThrows(Exception.class, () -> chain.checkAll());
+    assertEquals("Block 3: tx causes user 'C' to drop below 0 balance", ex.getMessage(),
+        "overdraft found by checkAll");
+  } // testCheckpoints()
+
+  /**
+   * Streams of blocks and transactions match iteration, in parallel
+   * or not.
+   */
+  @Test
+  public void testStreams() {
+    BlockChain chain = new BlockChain((hash) -> true, new Miner(1, true));
+    chain.append(chain.mine(new Transaction("", "A", 100000)));
+    for (int i = 1; i <= 300; i++) {
+      if (i % 50 == 0) {
+        chain.append(chain.mine(List.of(
+            new Transaction("A", "B", i),
+            new Transaction("", "C", i))));
+      } else {
+        chain.append(chain.mine(new Transaction("A", (i % 2 == 0) ? "B" : "C", i)));
+      } // if/else
+    } // for
+
+    ArrayList<Transaction> all = new ArrayList<Transaction>();
+    for (Transaction tx : chain) {
+      all.add(tx);
+    } // for
+    assertEquals(all, chain.transactionStream().toList(), "sequential transactions");
+    assertEquals(all, chain.transactionStream().parallel().toList(), "parallel transactions");
+    assertEquals(chain.getSize(), chain.blockStream().parallel().count(), "number of blocks");
+    assertEquals(chain.getBlock(123), chain.blockStream().parallel().skip(123).findFirst().get(),
+        "block 123");
+
+    int deposits = chain.transactionStream()
+        .parallel()
+        .filter((tx) -> tx.getSource().isEmpty())
+        .mapToInt(Transaction::getAmount)
+        .sum();
+    assertEquals(100000 + 50 + 100 + 150 + 200 + 250 + 300, deposits, "total deposits");
+    assertEquals(300, chain.transactionStream().parallel()
+        .filter((tx) -> !tx.getSource().isEmpty())
+        .mapToInt(Transaction::getAmount)
+        .max()
+        .getAsInt(), "largest transfer");
+    assertEquals(chain.balance("B") + chain.balance("C"), chain.transactionStream()
+        .parallel()
+        .filter((tx) -> !tx.getTarget().equals("A"))
+        .mapToInt(Transaction::getAmount)
+        .sum(), "volume to B and C");
+
+    Spliterator<Block> split = chain.blockStream().spliterator();
+    Spliterator<Block> half = split.trySplit();
+    assertEquals(chain.getSize(), half.estimateSize() + split.estimateSize(), "split sizes");
+    assertTrue(Math.abs(half.estimateSize() - split.estimateSize()) <= 1, "even split");
+
+    Spliterator<Block> stopping = chain.blockStream().spliterator();
+    assertTrue(stopping.tryAdvance((blk) -> { }), "block before a removal");
+    chain.removeLast();
+    assertFalse(stopping.tryAdvance((blk) -> { }), "no block after a removal");
+    assertEquals(-1, stopping.getExactSizeIfKnown(), "spliterators are not sized");
+  } // testStreams()
+
+  /**
+   * Readers see a consistent chain while a writer appends and removes
+   * blocks.
+   */
+  @Test
+  public void testConcurrentReaders() throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true, new Miner(1, true));
+    chain.append(chain.mine(new Transaction("", "A", 1000000)));
+    AtomicBoolean writing = new AtomicBoolean(true);
+    AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread writer = new Thread(() -> {
+      try {
+        for (int i = 0; i < 2000; i++) {
+          chain.append(chain.mine(new Transaction("A", "U" + (i % 50), 1)));
+          if (i % 10 == 9) {
+            chain.removeLast();
+          } // if
+        } // for
+      } catch (Throwable t) {
+        failure.compareAndSet(null, t);
+      } finally {
+        writing.set(false);
+      } // try-finally
+    });
+    Thread[] readers = new Thread[4];
+    for (int r = 0; r < readers.length; r++) {
+      readers[r] = new Thread(() -> {
+        try {
+          while (writing.get()) {
+            Block blk = chain.getLastBlock();
+            assertEquals(blk.computeHash(), blk.getHash(), "last block read during appends");
+            assertTrue(chain.balance("A") <= 1000000, "A's balance during appends");
+            assertTrue(chain.userCount() <= 51, "user count during appends");
+            Iterator<String> users = chain.users();
+            while (users.hasNext()) {
+              users.next();
+            } // while
+          } // while
+        } catch (Throwable t) {
+          failure.compareAndSet(null, t);
+        } // try-catch
+      });
+      readers[r].start();
+    } // for
+    writer.start();
+    writer.join();
+    for (Thread reader : readers) {
+      reader.join();
+    } // for
+    if (failure.get() != null) {
+      throw new AssertionError("concurrent access failed", failure.get());
+    } // if
+    assertEquals(1 + 1 + 1800, chain.getSize(), "size after appends and removals");
+    assertEquals(1000000 - 1800, chain.balance("A"), "A's final balance");
+    chain.check();
+  } // testConcurrentReaders()
+
+  /**
+   * Iterators cover the chain as it was when they were created, stop
+   * before blocks that were replaced, and can fail fast.
+   */
+  @Test
+  public void testSnapshotIterators() {
+    BlockChain chain = new BlockChain((hash) -> true, new Miner(1, true));
+    chain.append(chain.mine(new Transaction("", "A", 100)));
+    chain.append(chain.mine(new Transaction("A", "B", 10)));
+    chain.append(chain.mine(new Transaction("A", "C", 10)));
+
+    Iterator<Block> blocks = chain.blocks();
+    Iterator<Transaction> transactions = chain.iterator();
+    chain.append(chain.mine(new Transaction("A", "D", 10)));
+    int count = 0;
+    while (blocks.hasNext()) {
+      assertEquals(count++, blocks.next().getNum(), "block in snapshot");
+    } // while
+    assertEquals(4, count, "blocks in snapshot");
+    count = 0;
+    while (transactions.hasNext()) {
+      transactions.next();
+      count++;
+    } // while
+    assertEquals(3, count, "transactions in snapshot");
+
+    blocks = chain.blocks();
+    assertEquals(0, blocks.next().getNum(), "first block before replacement");
+    assertEquals(1, blocks.next().getNum(), "second block before replacement");
+    chain.removeLast();
+    chain.append(chain.mine(new Transaction("A", "E", 20)));
+    assertEquals(2, blocks.next().getNum(), "unchanged block after replacement");
+    assertEquals(3, blocks.next().getNum(), "another unchanged block after replacement");
+    assertEquals(new Transaction("A", "E", 20), blocks.next().getTransaction(),
+        "replacement of a block not reached yet");
+    assertFalse(blocks.hasNext(), "end of snapshot");
+
+    blocks = chain.blocks();
+    for (int i = 0; i < 4; i++) {
+      blocks.next();
+    } // for
+    chain.removeLast();
+    chain.removeLast();
+    chain.append(chain.mine(new Transaction("A", "F", 20)));
+    chain.append(chain.mine(new Transaction("A", "G", 20)));
+    assertFalse(blocks.hasNext(), "snapshot stops after a block it yielded is replaced");
+    assertThrows(NoSuchElementException.class, blocks::next, "no block past the stop");
+
+    Iterator<Block> failFast = chain.blocks(true);
+    failFast.next();
+    chain.append(chain.mine(new Transaction("A", "G", 1)));
+    failFast.next();
+    chain.removeLast();
+    assertThrows(ConcurrentModificationException.class, failFast::hasNext,
+        "fail-fast iterator after a removal");
+  } // testSnapshotIterators()
+
+  /**
+   * Find blocks by their hashes and by short hashes.
+   */
+  @Test
+  public void testFindByHash() {
+    BlockChain chain = new BlockChain((hash) -> true, new Miner(1, true));
+    chain.append(chain.mine(new Transaction("", "A", 1000)));
+    for (int i = 0; i < 300; i++) {
+      chain.append(chain.mine(new Transaction("A", "B", 1)));
+    } // for
+
+    for (int n = 0; n < chain.getSize(); n += 37) {
+      Block blk = chain.getBlock(n);
+      assertEquals(blk, chain.findByHash(new Hash(blk.getHash().getBytes())), "block " + n);
+      assertTrue(chain.contains(blk.getHash()), "chain contains block " + n);
+      String hex = blk.getHash().toString();
+      assertEquals(List.of(blk), chain.findByHashPrefix(hex, 2), "full hash of block " + n);
+      assertEquals(List.of(blk), chain.findByHashPrefix(hex.substring(0, 12).toLowerCase(), 2),
+          "short hash of block " + n);
+    } // for
+
+    List<Block> zeros = chain.findByHashPrefix("0", 1000);
+    assertTrue(zeros.size() > 0, "some hashes start with 0");
+    for (Block blk : zeros) {
+      assertTrue(blk.getHash().toString().startsWith("0"), "hash starting with 0");
+    } // for
+    assertEquals(chain.getSize(), chain.findByHashPrefix("", 1000).size(), "every hash");
+    assertEquals(3, chain.findByHashPrefix("", 3).size(), "limited");
+    assertThrows(IllegalArgumentException.class, () -> chain.findByHashPrefix("0G", 1),
+        "not hex");
+
+    Block last = chain.getBlock(chain.getSize() - 1);
+    chain.removeLast();
+    assertEquals(null, chain.findByHash(last.getHash()), "removed block");
+    assertFalse(chain.contains(last.getHash()), "chain does not contain removed block");
+    assertTrue(chain.findByHashPrefix(last.getHash().toString(), 1).isEmpty(),
+        "full hash of removed block");
+
+    for (int i = 0; i < 150; i++) {
+      chain.removeLast();
+    } // for
+    List<Block> all = chain.findByHashPrefix("", 1000);
+    assertEquals(chain.getSize(), all.size(), "every hash after removing");
+    for (int i = 1; i < all.size(); i++) {
+      assertTrue(all.get(i - 1).getHash().compareTo(all.get(i).getHash()) < 0,
+          "hashes in order");
+    } // for
+    for (int n = 0; n < chain.getSize(); n++) {
+      Block blk = chain.getBlock(n);
+      assertEquals(blk, chain.findByHash(blk.getHash()), "block " + n + " after removing");
+    } // for
+  } // testFindByHash()
+
+  /**
+   * Test a chain whose blocks are kept on disk.
+   *
+   * @param dir
+   *   A directory for the blocks.
+   */
+  @Test
+  public void testPersistentChain(@TempDir Path dir) throws Exception {
+    Hash tip;
+    try (FileBlockStore store = new FileBlockStore(dir, 4096)) {
+      BlockChain chain = new BlockChain((hash) -> true, new Miner(1, true), store);
+      chain.append(chain.mine(new Transaction("", "A", 1000)));
+      chain.append(chain.mine(List.of(
+          new Transaction("A", "B", 100),
+          new Transaction("B", "C", 30))));
+      for (int i = 0; i < 100; i++) {
+        chain.append(chain.mine(new Transaction("A", "C", 1)));
+      } // for
+      chain.append(chain.mine(new Transaction("C", "D", 5)));
+      assertTrue(chain.removeLast(), "removed last block");
+      tip = chain.getHash();
+    } // try
+
+    try (FileBlockStore store = new FileBlockStore(dir, 4096)) {
+      BlockChain chain = new BlockChain((hash) -> true, new Miner(1, true), store);
+      assertEquals(103, chain.getSize(), "size after reopening");
+      assertEquals(tip, chain.getHash(), "tip after reopening");
+      assertEquals(800, chain.balance("A"), "A's balance");
+      assertEquals(70, chain.balance("B"), "B's balance");
+      assertEquals(130, chain.balance("C"), "C's balance");
+      assertEquals(0, chain.balance("D"), "D's balance");
+      assertArrayEquals(new String[] {"A", "B", "C"}, users(chain), "users");
+      assertEquals(50, chain.findByHash(chain.getBlock(50).getHash()).getNum(), "find by hash");
+      chain.check();
+      chain.append(chain.mine(new Transaction("C", "D", 5)));
+      assertEquals(5, chain.balance("D"), "D's balance after appending");
+    } // try
+  } // testPersistentChain(Path)
+
+  /**
+   * Test that a chain with snapshots starts from the newest one that
+   * fits its blocks.
+   *
+   * @param dir
+   *   A directory for the blocks and snapshots.
+   */
+  @Test
+  public void testSnapshots(@TempDir Path dir) throws Exception {
+    Path snaps = dir.resolve("snapshots");
+    int[] reads = new int[2];
+    Hash tip;
+    try (FileBlockStore store = new FileBlockStore(dir)) {
+      BlockChain chain = new BlockChain((hash) -> true, new Miner(1, true), store, snaps);
+      chain.append(chain.mine(new Transaction("", "A", 100000)));
+      for (int i = 0; i < 1100; i++) {
+        chain.append(chain.mine(new Transaction("A", "U" + (i % 10), 1 + i % 3)));
+      } // for
+      chain.check();
+      tip = chain.getHash();
+    } // try
+
+    // The snapshot taken at 1024 blocks is the newest.
+    try (FileBlockStore store = new FileBlockStore(dir)) {
+      BlockChain chain = new BlockChain((hash) -> true, new Miner(1, true),
+          counting(store, reads), snaps);
+      assertTrue(reads[0] < 100, "replayed only the tail, not " + reads[0] + " blocks");
+      assertEquals(tip, chain.getHash(), "tip");
+      assertEquals(100000 - 2199, chain.balance("A"), "A's balance");
+      assertEquals(219, chain.balance("U3"), "U3's balance");
+      assertEquals(11, chain.userCount(), "users");
+      assertEquals(9, chain.balance("U0", 50), "U0's balance after block 50");
+      assertEquals(110, chain.historySize("U9"), "U9's history");
+      assertEquals(500, chain.findByHash(chain.getBlock(500).getHash()).getNum(), "block 500");
+      chain.check();
+      chain.snapshot();
+      assertEquals(1, reads[1], "synced the store for the snapshot");
+      for (int i = 0; i < 1000; i++) {
+        chain.removeLast();
+      } // for
+      assertEquals(100000 - 199, chain.balance("A"), "A's balance after removing");
+    } // try
+
+    // Neither snapshot fits the blocks that are left.
+    reads[0] = 0;
+    try (FileBlockStore store = new FileBlockStore(dir)) {
+      BlockChain chain = new BlockChain((hash) -> true, new Miner(1, true),
+          counting(store, reads), snaps);
+      assertEquals(102, reads[0], "replayed every block");
+      assertEquals(100000 - 199, chain.balance("A"), "A's balance after reopening");
+      assertEquals(19, chain.balance("U3"), "U3's balance after reopening");
+      chain.check();
+    } // try
+  } // testSnapshots(Path)
+
+  /**
+   * Test that snapshots taken at once at the same height do not get in
+   * each other's way.
+   *
+   * @param dir
+   *   A directory for the snapshots.
+   */
+  @Test
+  public void testConcurrentSnapshots(@TempDir Path dir) throws Exception {
+    BlockChain chain =
+        new BlockChain((hash) -> true, new Miner(1, true), new SegmentedBlockStore(), dir);
+    chain.append(chain.mine(new Transaction("", "A", 100)));
+    AtomicReference<Exception> failure = new AtomicReference<Exception>();
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> {
+        try {
+          for (int i = 0; i < 200; i++) {
+            chain.snapshot();
+          } // for
+        } catch (Exception e) {
+          failure.compareAndSet(null, e);
+        } // try-catch
+      });
+      threads[t].start();
+    } // for
+    for (Thread thread : threads) {
+      thread.join();
+    } // for
+    assertEquals(null, failure.get(), "no snapshot failed");
+    try (Stream<Path> listing = Files.list(dir)) {
+      assertEquals(List.of(dir.resolve("ledger-0000000002.snap")), listing.toList(),
+          "only the snapshot is left");
+    } // try
+  } // testConcurrentSnapshots(Path)
+
+  /**
+   * Test blocks that hold batches of transactions.
+   */
+  @Test
+  public void testBatches() throws Exception {
+    HashValidator v =
+        (hash) ->
+            (hash.length() >= 2) && (hash.get(0) == 12) && (hash.get(1) == 12);
+    BlockChain chain = new BlockChain(v);
+
+    chain.append(chain.mine(List.of(
+        new Transaction("", "A", 100),
+        new Transaction("", "B", 50),
+        new Transaction("A", "C", 30))));
+    chain.append(chain.mine(new Transaction("C", "B", 10)));
+    Block batch = chain.mine(List.of(
+        new Transaction("B", "A", 60),
+        new Transaction("A", "D", 130)));
+    assertTrue(batch.isBatch(), "mined block is a batch");
+    assertEquals(2, batch.getTransactions().size(), "transactions in batch");
+    chain.append(batch);
+
+    assertEquals(4, chain.getSize(), "size after appending batches");
+    assertEquals(0, chain.balance("A"), "A's balance");
+    assertEquals(0, chain.balance("B"), "B's balance");
+    assertEquals(20, chain.balance("C"), "C's balance");
+    assertEquals(130, chain.balance("D"), "D's balance");
+    assertArrayEquals(new String[] {"A", "B", "C", "D"}, users(chain), "users in batches");
+
+    ArrayList<Transaction> all = new ArrayList<Transaction>();
+    for (Transaction tx : chain) {
+      all.add(tx);
+    } // for
+    assertEquals(6, all.size(), "iterating transactions across batches");
+    assertEquals(new Transaction("A", "C", 30), all.get(2), "third transaction");
+    assertEquals(new Transaction("A", "D", 130), all.get(5), "last transaction");
+    assertTrue(chain.isCorrect(), "chain with batches is correct");
+    chain.check();
+
+    assertAppendFails(chain, chain.mine(List.of(
+        new Transaction("D", "A", 100),
+        new Transaction("D", "B", 100))), "D overdraws within a batch");
+    assertEquals(130, chain.balance("D"), "D's balance after rejected batch");
+    assertEquals(0, chain.balance("A"), "A's balance after rejected batch");
+    assertEquals(4, chain.getSize(), "size after rejected batch");
+    assertTrue(chain.removeLast(), "removing a batch");
+    assertEquals(70, chain.balance("A"), "A's balance after removing a batch");
+    assertEquals(60, chain.balance("B"), "B's balance after removing a batch");
+    assertEquals(0, chain.balance("D"), "D's balance after removing a batch");
+    assertTrue(chain.isCorrect(), "after removing a batch");
+  } // testBatches()
+
+  /**
+   * Test that the blocks a chain mines share one copy of each name,
+   * even in the default store, which keeps the blocks it is given.
+   */
+  @Test
+  public void testSharedNames() {
+    BlockChain chain = new BlockChain((hash) -> true);
+    Block first = chain.mine(new Transaction("", "Alice", 10));
+    chain.append(first);
+    Block second = chain.mine(List.of(
+        new Transaction("Alice", "Bob", 3),
+        new Transaction("Bob", "Alice", 1)));
+    chain.append(second);
+    Transaction paid = chain.getBlock(1).getTransaction();
+    Transaction paying = chain.getBlock(2).getTransactions().get(0);
+    assertSame(paid.getTarget(), paying.getSource(), "one copy of the name");
+    assertSame(paid.targetBytes(), paying.sourceBytes(), "one copy of the encoding");
+    assertSame(paying.targetBytes(),
+        chain.getBlock(2).getTransactions().get(1).sourceBytes(), "one copy within a batch");
+  } // testSharedNames()
+
 } // class TestBlockChain
@@ -0,0 +1,125 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our binary format.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+public class TestBlockCodec {
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Encode a block and decode it again.
+   *
+   * @param blk
+   *   The block.
+   *
+   * @return the decoded block.
+   */
+  static Block roundTrip(Block blk) {
+    ByteBuffer buf = ByteBuffer.allocate(BlockCodec.blockSize(blk));
+    BlockCodec.writeBlock(buf, blk);
+    assertFalse(buf.hasRemaining(), "blockSize is exact");
+    Block copy = BlockCodec.readBlock(buf.flip());
+    assertFalse(buf.hasRemaining(), "read the whole block");
+    return copy;
+  } // roundTrip(Block)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Varints take as few bytes as they need and read back unchanged.
+   */
+  @Test
+  public void varints() {
+    long[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, Long.MAX_VALUE, -1};
+    int[] sizes = {1, 1, 1, 2, 2, 3, 5, 9, 10};
+    ByteBuffer buf = ByteBuffer.allocate(64);
+    for (int i = 0; i < values.length; i++) {
+      buf.clear();
+      BlockCodec.writeVarLong(buf, values[i]);
+      assertEquals(sizes[i], buf.position(), "size of " + values[i]);
+      assertEquals(sizes[i], BlockCodec.varLongSize(values[i]), "varLongSize of " + values[i]);
+      assertEquals(values[i], BlockCodec.readVarLong(buf.flip()), "value " + values[i]);
+    } // for
+  } // varints()
+
+  /**
+   * Blocks read back with the same contents.
+   */
+  @Test
+  public void blocks() {
+    Block genesis = new Block(0, new Transaction("", "", 0), new Hash(new byte[] {}), 5);
+    Block single = new Block(1, new Transaction("A", "B\u00e9", -7), genesis.getHash(), -99);
+    Block batch = new Block(2,
+        List.of(new Transaction("", "A", 100), new Transaction("A", "\u65e5\u672c", 3)),
+        single.getHash(), Long.MIN_VALUE);
+    for (Block blk : new Block[] {genesis, single, batch}) {
+      TestBlockStore.assertStored(blk, roundTrip(blk), true, "block " + blk.getNum());
+    } // for
+    assertEquals(1 + 1 + 1 + 1 + 1 + 33 + 3, BlockCodec.blockSize(genesis), "genesis is small");
+  } // blocks()
+
+  /**
+   * Transactions read back with the same contents.
+   */
+  @Test
+  public void transactions() {
+    Transaction tx = new Transaction("Zo\u00eb", "Sam", Integer.MIN_VALUE);
+    ByteBuffer buf = ByteBuffer.allocate(BlockCodec.transactionSize(tx));
+    BlockCodec.writeTransaction(buf, tx);
+    assertEquals(tx, BlockCodec.readTransaction(buf.flip()), "transaction");
+  } // transactions()
+
+  /**
+   * Bad input is rejected rather than misread.
+   */
+  @Test
+  public void badInput() {
+    Block blk = new Block(1, new Transaction("A", "B", 1), new Hash(new byte[] {1}), 1);
+    ByteBuffer buf = ByteBuffer.allocate(BlockCodec.blockSize(blk));
+    BlockCodec.writeBlock(buf, blk);
+
+    ByteBuffer truncated = buf.duplicate().flip().limit(buf.position() - 1);
+    assertThrows(BufferUnderflowException.class, () -> BlockCodec.readBlock(truncated),
+        "truncated block");
+
+    ByteBuffer versioned = buf.duplicate().flip();
+    versioned.put(0, (byte) 2);
+    assertThrows(IllegalArgumentException.class, () -> BlockCodec.readBlock(versioned),
+        "unknown version");
+
+    ByteBuffer negative = ByteBuffer.allocate(64);
+    BlockCodec.writeVarLong(negative, BlockCodec.VERSION);
+    BlockCodec.writeVarLong(negative, -1);
+    assertThrows(IllegalArgumentException.class, () -> BlockCodec.readBlock(negative.flip()),
+        "negative block number");
+
+    ByteBuffer tooLarge = ByteBuffer.allocate(10);
+    BlockCodec.writeVarLong(tooLarge, -1);
+    tooLarge.put(9, (byte) 2);
+    assertThrows(IllegalArgumentException.class, () -> BlockCodec.readVarLong(tooLarge.flip()),
+        "tenth byte past 64 bits");
+
+    ByteBuffer longName = ByteBuffer.allocate(16);
+    BlockCodec.writeVarLong(longName, 2);
+    BlockCodec.writeVarLong(longName, 1000);
+    assertThrows(BufferUnderflowException.class,
+        () -> BlockCodec.readTransaction(longName.flip()), "name runs past the end");
+  } // badInput()
+} // class TestBlockCodec
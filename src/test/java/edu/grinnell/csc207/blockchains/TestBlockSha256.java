@@ -0,0 +1,76 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.ByteBuffer;
+
+import java.security.MessageDigest;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our BlockSha256 class.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+public class TestBlockSha256 {
+  /**
+   * Compute the expected hash of a prefix and nonce with the JDK.
+   *
+   * @param prefix
+   *   The prefix.
+   * @param nonce
+   *   The nonce.
+   *
+   * @return the expected digest.
+   */
+  static byte[] expected(byte[] prefix, long nonce) throws Exception {
+    MessageDigest md = MessageDigest.getInstance("sha-256");
+    md.update(prefix);
+    md.update(ByteBuffer.allocate(Long.BYTES).putLong(nonce).array());
+    return md.digest();
+  } // expected(byte[], long)
+
+  /**
+   * The engine agrees with the JDK for every prefix length across
+   * a few chunks, so the nonce and padding land everywhere.
+   */
+  @Test
+  public void matchesJdk() throws Exception {
+    Random random = new Random(207);
+    long[] nonces = {0, 1, 255, 256, -1, Long.MIN_VALUE, 0x0102030405060708L};
+    for (int length = 0; length < 200; length++) {
+      byte[] prefix = new byte[length];
+      random.nextBytes(prefix);
+      BlockSha256 engine = new BlockSha256(prefix);
+      for (long nonce : nonces) {
+        byte[] actual = new byte[32];
+        int first = engine.hash(nonce);
+        engine.write(actual);
+        byte[] expected = expected(prefix, nonce);
+        assertArrayEquals(expected, actual,
+            "digest of " + length + "-byte prefix with nonce " + nonce);
+        assertEquals(ByteBuffer.wrap(expected).getInt(), first,
+            "first word of " + length + "-byte prefix with nonce " + nonce);
+      } // for
+    } // for
+  } // matchesJdk()
+
+  /**
+   * The engine agrees with Block.computeHash() for real blocks.
+   */
+  @Test
+  public void matchesBlocks() {
+    Block b = new Block(17, new Transaction("Sheilla", "David", 207),
+        new Hash(new byte[32]), 0);
+    BlockHasher hasher = new BlockHasher(b);
+    for (long nonce = 0; nonce < 1000; nonce++) {
+      assertEquals(b.computeHash(nonce), hasher.hash(nonce), "hash with nonce " + nonce);
+    } // for
+  } // matchesBlocks()
+} // class TestBlockSha256
@@ -0,0 +1,361 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+/**
+ * Some simple tests of our block stores.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+public class TestBlockStore {
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Make some blocks.
+   *
+   * @param n
+   *   The number of blocks to make.
+   *
+   * @return the blocks.
+   */
+  static Block[] blocks(int n) {
+    Block[] result = new Block[n];
+    Hash prev = new Hash(new byte[] {});
+    for (int i = 0; i < n; i++) {
+      result[i] = new Block(i, new Transaction("", "U" + (i % 7), i), prev, i);
+      prev = result[i].getHash();
+    } // for
+    return result;
+  } // blocks(int)
+
+  /**
+   * Make sure a block read back from a store matches the one stored.
+   *
+   * @param expected
+   *   The block that was stored.
+   * @param actual
+   *   The block read back.
+   * @param copies
+   *   True if the store makes new blocks when reading and false if it
+   *   keeps the ones it is given.
+   * @param message
+   *   What to say if they don't match.
+   */
+  static void assertStored(Block expected, Block actual, boolean copies, String message) {
+    if (!copies) {
+      assertSame(expected, actual, message);
+      return;
+    } // if
+    assertEquals(expected.getNum(), actual.getNum(), message + ": number");
+    assertEquals(expected.getNonce(), actual.getNonce(), message + ": nonce");
+    assertEquals(expected.getPrevHash(), actual.getPrevHash(), message + ": previous hash");
+    assertEquals(expected.getHash(), actual.getHash(), message + ": hash");
+    assertEquals(expected.getMerkleRoot(), actual.getMerkleRoot(), message + ": Merkle root");
+    assertEquals(expected.getTransactions(), actual.getTransactions(),
+        message + ": transactions");
+    assertEquals(actual.getHash(), actual.computeHash(), message + ": recomputed hash");
+  } // assertStored(Block, Block, boolean, String)
+
+  /**
+   * Add, get, and remove enough blocks to cross several segments.
+   *
+   * @param store
+   *   The (empty) store to test.
+   */
+  static void exercise(BlockStore store) {
+    exercise(store, false);
+  } // exercise(BlockStore)
+
+  /**
+   * Add, get, and remove enough blocks to cross several segments.
+   *
+   * @param store
+   *   The (empty) store to test.
+   * @param copies
+   *   True if the store makes new blocks when reading and false if it
+   *   keeps the ones it is given.
+   */
+  static void exercise(BlockStore store, boolean copies) {
+    Block[] blocks = blocks(2500);
+    for (Block b : blocks) {
+      store.add(b);
+    } // for
+    assertEquals(blocks.length, store.size(), "size after adding");
+    for (int i = 0; i < blocks.length; i += 97) {
+      assertStored(blocks[i], store.get(i), copies, "block " + i);
+    } // for
+    assertStored(blocks[blocks.length - 1], store.get(blocks.length - 1), copies, "last block");
+    assertThrows(IndexOutOfBoundsException.class, () -> store.get(blocks.length));
+    assertThrows(IndexOutOfBoundsException.class, () -> store.get(-1));
+
+    for (int i = blocks.length - 1; i >= 1000; i--) {
+      store.removeLast();
+    } // for
+    assertEquals(1000, store.size(), "size after removing");
+    assertStored(blocks[999], store.get(999), copies, "last block after removing");
+    assertThrows(IndexOutOfBoundsException.class, () -> store.get(1000));
+
+    for (int i = 1000; i < 1100; i++) {
+      store.add(blocks[i]);
+    } // for
+    assertStored(blocks[1099], store.get(1099), copies, "last block after re-adding");
+    while (store.size() > 0) {
+      store.removeLast();
+    } // while
+    assertThrows(IllegalStateException.class, () -> store.removeLast());
+  } // exercise(BlockStore, boolean)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * The segmented store keeps blocks in order.
+   */
+  @Test
+  public void segmented() {
+    exercise(new SegmentedBlockStore());
+  } // segmented()
+
+  /**
+   * The columnar store keeps blocks in order.
+   */
+  @Test
+  public void columnar() {
+    exercise(new ColumnarBlockStore(), true);
+  } // columnar()
+
+  /**
+   * The columnar store keeps batches and previous hashes that do not
+   * match the block before.
+   */
+  @Test
+  public void columnarShapes() {
+    Block[] blocks = blocks(3);
+    Block batch = new Block(3,
+        List.of(new Transaction("", "A", 5), new Transaction("A", "B", 2)),
+        blocks[2].getHash(), 17);
+    Block stray = new Block(4, new Transaction("B", "A", 1), new Hash(new byte[] {4, 2}), 3);
+    ColumnarBlockStore store = new ColumnarBlockStore();
+    for (Block b : blocks) {
+      store.add(b);
+    } // for
+    store.add(batch);
+    store.add(stray);
+    assertStored(blocks[0], store.get(0), true, "first block");
+    assertStored(blocks[1], store.get(1), true, "linked block");
+    assertStored(batch, store.get(3), true, "batch");
+    assertStored(stray, store.get(4), true, "stray block");
+    store.removeLast();
+    store.removeLast();
+    store.add(new Block(3, new Transaction("", "C", 1), blocks[2].getHash(), 1));
+    assertFalse(store.get(3).isBatch(), "batch removed");
+    assertThrows(IllegalArgumentException.class, () -> store.add(blocks[1]),
+        "block out of place");
+  } // columnarShapes()
+
+  /**
+   * The file store keeps blocks in order, across small segments.
+   *
+   * @param dir
+   *   A directory for the segments.
+   */
+  @Test
+  public void file(@TempDir Path dir) throws IOException {
+    try (FileBlockStore store = new FileBlockStore(dir, 4096)) {
+      exercise(store, true);
+    } // try
+  } // file(Path)
+
+  /**
+   * The file store finds its blocks again when reopened, including
+   * batches and names that are not ASCII, and drops removed blocks.
+   *
+   * @param dir
+   *   A directory for the segments.
+   */
+  @Test
+  public void fileReopen(@TempDir Path dir) throws IOException {
+    Block[] blocks = blocks(300);
+    Block batch = new Block(300,
+        List.of(new Transaction("", "Z\u00fcrich", 5), new Transaction("Z\u00fcrich", "A", 2)),
+        blocks[299].getHash(), 17);
+    try (FileBlockStore store = new FileBlockStore(dir, 4096)) {
+      for (Block b : blocks) {
+        store.add(b);
+      } // for
+      store.add(batch);
+      store.add(new Block(301, new Transaction("", "B", 1), batch.getHash(), 3));
+      store.removeLast();
+    } // try
+    try (FileBlockStore store = new FileBlockStore(dir, 4096)) {
+      assertEquals(301, store.size(), "size after reopening");
+      for (int i = 0; i < blocks.length; i += 13) {
+        assertStored(blocks[i], store.get(i), true, "block " + i);
+      } // for
+      assertStored(batch, store.get(300), true, "batch");
+    } // try
+  } // fileReopen(Path)
+
+  /**
+   * A record torn by a crash, and anything after it, is dropped when
+   * the store is reopened.
+   *
+   * @param dir
+   *   A directory for the segments.
+   */
+  @Test
+  public void fileTornTail(@TempDir Path dir) throws IOException {
+    Block[] blocks = blocks(20);
+    try (FileBlockStore store = new FileBlockStore(dir, 4096)) {
+      for (Block b : blocks) {
+        store.add(b);
+      } // for
+    } // try
+    long end;
+    try (FileChannel channel = FileChannel.open(dir.resolve("blocks-00000000.log"),
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      ByteBuffer length = ByteBuffer.allocate(4);
+      long offset = 8;
+      for (int i = 0; i < 19; i++) {
+        length.clear();
+        channel.read(length, offset);
+        offset += length.flip().getInt() + 90;
+      } // for
+      end = offset;
+      // Scribble over the middle of the last record.
+      channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3}), end + 40);
+    } // try
+    try (FileBlockStore store = new FileBlockStore(dir, 4096)) {
+      assertEquals(19, store.size(), "size after tearing the last record");
+      assertStored(blocks[18], store.get(18), true, "last intact block");
+      store.add(blocks[19]);
+      assertStored(blocks[19], store.get(19), true, "block written over the torn one");
+    } // try
+    assertFalse(Files.exists(dir.resolve("blocks-00000001.log")), "no extra segment");
+  } // fileTornTail(Path)
+
+  /**
+   * Opening a file store clears all of a torn record, so that the
+   * shorter records written over it are not followed by what is left
+   * of it.
+   *
+   * @param dir
+   *   A directory for the segments.
+   */
+  @Test
+  public void fileTornLongRecord(@TempDir Path dir) throws IOException {
+    // Each record takes 95 bytes, so ten fill a segment and leave 92.
+    int segmentBytes = 8 + 10 * 95 + 92;
+    Block[] blocks = blocks(30);
+    try (FileBlockStore store = new FileBlockStore(dir, segmentBytes)) {
+      for (int i = 0; i < 3; i++) {
+        store.add(blocks[i]);
+      } // for
+    } // try
+    try (FileChannel channel = FileChannel.open(dir.resolve("blocks-00000000.log"),
+        StandardOpenOption.WRITE)) {
+      // What reached the disk of a record that ran to the end.
+      byte[] garbage = new byte[segmentBytes - (8 + 3 * 95)];
+      Arrays.fill(garbage, (byte) 0x55);
+      channel.write(ByteBuffer.wrap(garbage), 8 + 3 * 95);
+    } // try
+    try (FileBlockStore store = new FileBlockStore(dir, segmentBytes)) {
+      assertEquals(3, store.size(), "size after tearing the long record");
+      for (int i = 3; i < blocks.length; i++) {
+        store.add(blocks[i]);
+      } // for
+    } // try
+    assertTrue(Files.exists(dir.resolve("blocks-00000001.log")), "second segment");
+    try (FileChannel channel = FileChannel.open(dir.resolve("blocks.idx"),
+        StandardOpenOption.WRITE)) {
+      channel.truncate(2 * 8);
+    } // try
+    try (FileBlockStore store = new FileBlockStore(dir, segmentBytes)) {
+      assertEquals(blocks.length, store.size(), "size when reading past the index");
+      for (int i = 0; i < blocks.length; i++) {
+        assertStored(blocks[i], store.get(i), true, "block " + i);
+      } // for
+    } // try
+  } // fileTornLongRecord(Path)
+
+  /**
+   * Opening a file store trusts the index as far as it fits, reads the
+   * records after it, and reads every record if the index is bad.
+   *
+   * @param dir
+   *   A directory for the segments.
+   */
+  @Test
+  public void fileIndex(@TempDir Path dir) throws IOException {
+    Block[] blocks = blocks(20);
+    Path index = dir.resolve("blocks.idx");
+    try (FileBlockStore store = new FileBlockStore(dir, 1024)) {
+      for (Block b : blocks) {
+        store.add(b);
+      } // for
+    } // try
+    assertEquals(20 * 8, Files.size(index), "index after closing");
+
+    try (FileChannel channel = FileChannel.open(index, StandardOpenOption.WRITE)) {
+      channel.truncate(7 * 8);
+    } // try
+    try (FileBlockStore store = new FileBlockStore(dir, 1024)) {
+      assertEquals(20, store.size(), "size with a short index");
+      assertStored(blocks[19], store.get(19), true, "block read past the index");
+      store.sync();
+      assertEquals(20 * 8, Files.size(index), "index after syncing");
+      store.removeLast();
+      assertEquals(19 * 8, Files.size(index), "index after removing");
+    } // try
+
+    Files.write(index, new byte[] {0, 0, 0, 3, 0, 0, 0, 9, 1, 2, 3});
+    try (FileBlockStore store = new FileBlockStore(dir, 1024)) {
+      assertEquals(19, store.size(), "size with a bad index");
+      for (int i = 0; i < 19; i++) {
+        assertStored(blocks[i], store.get(i), true, "block " + i + " with a bad index");
+      } // for
+    } // try
+    assertEquals(19 * 8, Files.size(index), "index rebuilt");
+  } // fileIndex(Path)
+
+  /**
+   * The file store will not open segments in a format it does not
+   * know.
+   *
+   * @param dir
+   *   A directory for the segments.
+   */
+  @Test
+  public void fileVersion(@TempDir Path dir) throws IOException {
+    try (FileBlockStore store = new FileBlockStore(dir, 1024)) {
+      store.add(blocks(1)[0]);
+    } // try
+    try (FileChannel channel = FileChannel.open(dir.resolve("blocks-00000000.log"),
+        StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.allocate(4).putInt(0, FileBlockStore.FORMAT_VERSION + 1), 4);
+    } // try
+    assertThrows(IOException.class, () -> new FileBlockStore(dir, 1024), "newer version");
+    Files.write(dir.resolve("blocks-00000000.log"), new byte[] {'n', 'o', 'p', 'e', 0, 0, 0, 1});
+    assertThrows(IOException.class, () -> new FileBlockStore(dir, 1024), "not a segment");
+  } // fileVersion(Path)
+} // class TestBlockStore
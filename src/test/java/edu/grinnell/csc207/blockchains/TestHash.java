@@ -1,10 +1,16 @@
 package edu.grinnell.csc207.blockchains;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HexFormat;
+
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import org.junit.jupiter.api.Test;
 
@@ -106,5 +112,80 @@ public class TestHash {
     assertFalse(h.equals(new Hash(bytes)), 
        "a hash does not equal a hash made from its modified bytes");
   } // testReturnBytes
-  
+
+  /**
+   * Test 32-byte hashes, which are stored differently.
+   */
+  @Test
+  public void testFullHashes() {
+    byte[] bytes = new byte[32];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) (i * 37);
+    } // for
+    Hash h = new Hash(bytes);
+    assertEquals(32, h.length(), "length of full hash");
+    for (int i = 0; i < bytes.length; i++) {
+      assertEquals(bytes[i], h.get(i), "byte " + i + " of full hash");
+    } // for
+    assertThrows(IndexOutOfBoundsException.class, () -> h.get(32), "byte past the end");
+    assertArrayEquals(bytes, h.getBytes(), "bytes of full hash");
+    assertEquals(HexFormat.of().withUpperCase().formatHex(bytes), h.toString(),
+        "toString() for full hash");
+    assertEquals(ByteBuffer.wrap(bytes).getLong(8), h.getLong(1), "second word");
+    assertEquals(h, new Hash(bytes), "equal full hashes");
+    assertEquals(h.hashCode(), new Hash(bytes).hashCode(), "hash codes of equal hashes");
+    bytes[31]++;
+    assertNotEquals(h, new Hash(bytes), "full hashes that differ in the last byte");
+    assertNotEquals(h, new Hash(new byte[] {0, 37}), "full hash and short hash");
+
+    ByteBuffer buffer = ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(7);
+    h.writeTo(buffer);
+    new Hash(new byte[] {1, 2, 3}).writeTo(buffer);
+    assertEquals(39, buffer.position(), "bytes written");
+    assertEquals(ByteOrder.LITTLE_ENDIAN, buffer.order(), "byte order kept");
+    assertArrayEquals(h.getBytes(), Arrays.copyOfRange(buffer.array(), 4, 36),
+        "full hash written");
+  } // testFullHashes()
+
+  /**
+   * Test ordering hashes.
+   */
+  @Test
+  public void testCompare() {
+    byte[] low = new byte[32];
+    byte[] high = new byte[32];
+    high[9] = (byte) 0x80;
+    Hash a = new Hash(low);
+    Hash b = new Hash(high);
+    assertTrue(a.compareTo(b) < 0, "bytes compare as unsigned");
+    assertTrue(b.compareTo(a) > 0, "comparison is antisymmetric");
+    assertEquals(0, a.compareTo(new Hash(low)), "equal hashes");
+    assertTrue(new Hash(new byte[] {1, 2}).compareTo(new Hash(new byte[] {1, 2, 0})) < 0,
+        "shorter hash comes first");
+    assertTrue(new Hash(new byte[] {(byte) 0xFF}).compareTo(b) > 0,
+        "short hash with a larger first byte");
+    assertTrue(a.compareTo(new Hash(new byte[] {0})) > 0, "full hash after its start");
+  } // testCompare()
+
+  /**
+   * Scratch hashes follow their array and act like the hash it holds,
+   * while hashes made from the array don't change.
+   */
+  @Test
+  public void testScratchHashes() {
+    byte[] bytes = new byte[32];
+    bytes[5] = 42;
+    ScratchHash scratch = new ScratchHash(bytes);
+    Hash kept = new Hash(bytes);
+    assertEquals(kept, scratch, "scratch hash equals a hash of its bytes");
+    assertEquals(scratch, kept, "hash equals a scratch hash of its bytes");
+    assertEquals(kept.hashCode(), scratch.hashCode(), "hash codes agree");
+    assertEquals(kept.toString(), scratch.toString(), "strings agree");
+    bytes[31] = 1;
+    assertEquals(1, scratch.get(31), "scratch hash follows its array");
+    assertNotEquals(kept, scratch, "hash does not follow the array");
+    assertArrayEquals(bytes, scratch.getBytes(), "bytes of scratch hash");
+    assertTrue(kept.compareTo(scratch) < 0, "scratch hashes compare by their bytes");
+  } // testScratchHashes()
 } // class TestHash
@@ -0,0 +1,201 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our Miner class.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+public class TestMiner {
+  /**
+   * A validator that needs a bit of searching.
+   */
+  static final HashValidator VALIDATOR =
+      (h) -> (h.length() >= 2) && (h.get(0) == 0) && ((h.get(1) & 0xF0) == 0);
+
+  /**
+   * A deterministic parallel search finds the same nonce as the
+   * sequential search in the Block constructor.
+   */
+  @Test
+  public void deterministicMatchesSequential() {
+    Transaction t = new Transaction("Here", "There", 12);
+    Hash ph = new Hash(new byte[] {3, 4, 5});
+    Block expected = new Block(4, t, ph, VALIDATOR);
+    for (int threads = 1; threads <= 8; threads++) {
+      Block b = new Miner(threads, true).mine(4, t, ph, VALIDATOR);
+      assertEquals(expected.getNonce(), b.getNonce(),
+          "lowest nonce with " + threads + " threads");
+      assertEquals(expected.getHash(), b.getHash(),
+          "hash with " + threads + " threads");
+    } // for
+  } // deterministicMatchesSequential()
+
+  /**
+   * A non-deterministic search still finds a valid nonce.
+   */
+  @Test
+  public void nondeterministicIsValid() {
+    Transaction t = new Transaction("", "Someone", 555);
+    Hash ph = new Hash(new byte[] {5, 5, 5});
+    Block b = new Miner(4, false).mine(7, t, ph, VALIDATOR);
+    assertTrue(VALIDATOR.isValid(b.getHash()), "mined hash is valid");
+    assertEquals(b.computeHash(), b.getHash(), "mined hash is consistent");
+    assertEquals(7, b.getNum(), "number of mined block");
+    assertEquals(t, b.getTransaction(), "transaction in mined block");
+  } // nondeterministicIsValid()
+
+  /**
+   * Exceptions thrown by the validator reach the caller.
+   */
+  @Test
+  public void validatorFailure() {
+    HashValidator broken = (h) -> {
+      throw new IllegalStateException("broken");
+    };
+    assertThrows(IllegalStateException.class,
+        () -> new Miner(3, true).mine(1, new Transaction("", "A", 1),
+            new Hash(new byte[] {}), broken));
+  } // validatorFailure()
+
+  /**
+   * Asynchronous mining finds the same block as synchronous mining.
+   */
+  @Test
+  public void asyncMatchesSync() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      Transaction t = new Transaction("A", "B", 3);
+      Hash ph = new Hash(new byte[] {9, 9});
+      Miner miner = new Miner(4, true);
+      Block expected = miner.mine(2, t, ph, VALIDATOR);
+      Block b = miner.mineAsync(2, t, ph, VALIDATOR, pool, null, null)
+          .get(10, TimeUnit.SECONDS);
+      assertEquals(expected.getNonce(), b.getNonce(), "nonce of async block");
+      assertEquals(expected.getHash(), b.getHash(), "hash of async block");
+    } finally {
+      pool.shutdownNow();
+    } // try-finally
+  } // asyncMatchesSync()
+
+  /**
+   * Cancelling an asynchronous search stops the workers.
+   */
+  @Test
+  public void asyncCancel() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      AtomicLong attempts = new AtomicLong();
+      HashValidator never = (h) -> attempts.incrementAndGet() < 0;
+      CompletableFuture<Block> result = new Miner(2, false).mineAsync(
+          1, new Transaction("", "A", 1), new Hash(new byte[] {}),
+          never, pool, null, null);
+      while (attempts.get() < 1000) {
+        Thread.sleep(1);
+      } // while
+      assertTrue(result.cancel(true), "cancelled the search");
+      pool.shutdown();
+      assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS),
+          "workers stopped after cancellation");
+      long stopped = attempts.get();
+      Thread.sleep(20);
+      assertEquals(stopped, attempts.get(), "no attempts after the workers stop");
+    } finally {
+      pool.shutdownNow();
+    } // try-finally
+  } // asyncCancel()
+
+  /**
+   * An asynchronous search fails once its deadline passes, and it
+   * reports progress while it runs.
+   */
+  @Test
+  public void asyncDeadline() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      AtomicLong reported = new AtomicLong();
+      CompletableFuture<Block> result = new Miner(2, true).mineAsync(
+          1, new Transaction("", "A", 1), new Hash(new byte[] {}),
+          (h) -> false, pool, Duration.ofMillis(300),
+          (tried, rate) -> reported.set(tried));
+      ExecutionException ex = assertThrows(ExecutionException.class,
+          () -> result.get(10, TimeUnit.SECONDS));
+      assertInstanceOf(TimeoutException.class, ex.getCause(),
+          "search fails with a timeout");
+      assertTrue(reported.get() > 0, "progress was reported");
+    } finally {
+      pool.shutdownNow();
+    } // try-finally
+  } // asyncDeadline()
+
+  /**
+   * The deadline holds even if the executor never runs the workers.
+   */
+  @Test
+  public void asyncDeadlineWithoutWorkers() throws Exception {
+    CompletableFuture<Block> result = new Miner(2, true).mineAsync(
+        1, new Transaction("", "A", 1), new Hash(new byte[] {}),
+        (h) -> false, (r) -> { }, Duration.ofMillis(100), null);
+    ExecutionException ex = assertThrows(ExecutionException.class,
+        () -> result.get(10, TimeUnit.SECONDS));
+    assertInstanceOf(TimeoutException.class, ex.getCause(),
+        "search fails with a timeout");
+  } // asyncDeadlineWithoutWorkers()
+
+  /**
+   * A nonce found before the deadline wins, even if the workers are
+   * still finishing when the deadline passes.
+   */
+  @Test
+  public void asyncFoundBeatsDeadline() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      // The first attempt succeeds; every other one outlasts the
+      // deadline.
+      AtomicLong attempts = new AtomicLong();
+      HashValidator first = (h) -> {
+        if (attempts.incrementAndGet() == 1) {
+          return true;
+        } // if
+        try {
+          Thread.sleep(500);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        } // try-catch
+        return false;
+      };
+      CompletableFuture<Block> result = new Miner(2, true).mineAsync(
+          1, new Transaction("", "A", 1), new Hash(new byte[] {}),
+          first, pool, Duration.ofMillis(100), null);
+      long nonce = result.get(10, TimeUnit.SECONDS).getNonce();
+      assertTrue(nonce == 0 || nonce == 1, "found nonce " + nonce);
+    } finally {
+      pool.shutdownNow();
+    } // try-finally
+  } // asyncFoundBeatsDeadline()
+
+  /**
+   * We cannot mine with no threads.
+   */
+  @Test
+  public void noThreads() {
+    assertThrows(IllegalArgumentException.class, () -> new Miner(0, true));
+  } // noThreads()
+} // class TestMiner
@@ -1,6 +1,13 @@
 package edu.grinnell.csc207.blockchains;
 
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
 
@@ -38,4 +45,51 @@ public class TestTransaction {
         trans.toString(),
         "String representation of deposit");
   } // depositTest()
+
+  /**
+   * Test that equal transactions have equal hash codes and work as
+   * keys.
+   */
+  @Test
+  public void hashTest() {
+    Transaction trans = new Transaction("Here", "There", 10);
+    Transaction same = new Transaction(new String("Here"), "There", 10);
+    assertEquals(trans, same, "equal transactions");
+    assertEquals(trans.hashCode(), same.hashCode(), "hash codes of equal transactions");
+    assertNotEquals(trans, new Transaction("There", "Here", 10), "swapped names");
+    assertNotEquals(trans, new Transaction("Here", "There", 11), "different amount");
+    assertNotEquals(trans, new Transaction("", "There", 10), "deposit");
+    assertFalse(trans.equals((Object) null), "not equal to null");
+
+    HashSet<Transaction> set = new HashSet<Transaction>();
+    set.add(trans);
+    assertTrue(set.contains(same), "set contains an equal transaction");
+    assertFalse(set.contains(new Transaction("Here", "There", -10)), "negated transaction");
+  } // hashTest()
+
+  /**
+   * A dictionary keeps one copy of each name, and the transactions it
+   * makes or reads share those copies.
+   */
+  @Test
+  public void dictionaryTest() {
+    UserDictionary users = new UserDictionary();
+    int alpha = users.id(new String("Alpha"));
+    int beta = users.id(new String("Beta"));
+    Transaction first = users.transaction(alpha, beta, 1);
+    assertEquals(new Transaction("Alpha", "Beta", 1), first, "transaction from IDs");
+
+    ByteBuffer buf = ByteBuffer.allocate(64);
+    BlockCodec.writeTransaction(buf, new Transaction("Beta", "Alpha", 2));
+    Transaction second = BlockCodec.readTransaction(buf.flip(), users);
+    assertEquals(new Transaction("Beta", "Alpha", 2), second, "transaction read back");
+    assertSame(first.getSource(), second.getTarget(), "one copy of the source");
+    assertSame(first.getTarget(), second.getSource(), "one copy of the target");
+    assertSame(first.sourceBytes(), second.targetBytes(), "one copy of the encoding");
+
+    assertEquals(UserDictionary.NOBODY, users.find(""), "deposit");
+    assertEquals(alpha, users.find("Alpha"), "find a known name");
+    assertEquals(-1, users.find("Gamma"), "find an unknown name");
+    assertEquals(-1, new UserDictionary().find("Alpha"), "find in another dictionary");
+  } // dictionaryTest()
 } // class TestTransaction
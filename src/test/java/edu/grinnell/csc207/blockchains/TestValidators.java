@@ -0,0 +1,144 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.math.BigInteger;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our built-in validators.
+ *
+ * @author David William Stroud
+ * @author Sheilla Muligande
+ */
+public class TestValidators {
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Make a 32-byte hash that starts with some bytes and is zero
+   * afterwards.
+   *
+   * @param start
+   *   The first bytes of the hash.
+   *
+   * @return the bytes of the hash.
+   */
+  static byte[] bytes(int... start) {
+    byte[] result = new byte[32];
+    for (int i = 0; i < start.length; i++) {
+      result[i] = (byte) start[i];
+    } // for
+    return result;
+  } // bytes(int...)
+
+  /**
+   * Check that every way of asking a validator gives the same answer.
+   *
+   * @param expected
+   *   Whether the hash should be valid.
+   * @param v
+   *   The validator.
+   * @param hash
+   *   The bytes of the hash.
+   * @param msg
+   *   What we're checking.
+   */
+  static void assertValid(boolean expected, HashValidator v, byte[] hash, String msg) {
+    assertEquals(expected, v.isValid(new Hash(hash)), msg + " (Hash)");
+    byte[] padded = new byte[hash.length + 3];
+    System.arraycopy(hash, 0, padded, 3, hash.length);
+    assertEquals(expected, v.isValid(padded, 3, hash.length), msg + " (bytes)");
+    if (expected && hash.length >= 4) {
+      int first = ((hash[0] & 0xFF) << 24) | ((hash[1] & 0xFF) << 16)
+          | ((hash[2] & 0xFF) << 8) | (hash[3] & 0xFF);
+      assertTrue(v.mayBeValid(first), msg + " (first word)");
+    } // if
+  } // assertValid(boolean, HashValidator, byte[], String)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Leading zero bits are counted exactly.
+   */
+  @Test
+  public void leadingZeros() {
+    HashValidator v = new LeadingZerosValidator(12);
+    assertValid(true, v, bytes(0, 0x0F, 0xFF), "12 zero bits");
+    assertValid(true, v, bytes(0, 0), "16 zero bits");
+    assertValid(false, v, bytes(0, 0x10), "11 zero bits");
+    assertValid(false, v, bytes(1), "7 zero bits");
+    assertValid(false, v, new byte[] {0}, "too short");
+    assertFalse(v.mayBeValid(0x00100000), "first word with 11 zero bits");
+
+    HashValidator none = new LeadingZerosValidator(0);
+    assertValid(true, none, bytes(0xFF), "no zero bits needed");
+    assertValid(true, none, new byte[] {}, "no zero bits needed, empty hash");
+
+    HashValidator many = new LeadingZerosValidator(40);
+    assertValid(true, many, bytes(0, 0, 0, 0, 0, 0xFF), "40 zero bits");
+    assertValid(false, many, bytes(0, 0, 0, 0, 1), "39 zero bits");
+    assertFalse(many.mayBeValid(1), "first word with 31 zero bits");
+  } // leadingZeros()
+
+  /**
+   * Whole bytes of zeros act like the UI's old validator.
+   */
+  @Test
+  public void leadingZeroBytes() {
+    HashValidator v = new LeadingZerosValidator(24);
+    assertValid(true, v, bytes(0, 0, 0, 1), "three zero bytes");
+    assertValid(false, v, bytes(0, 0, 1), "two zero bytes");
+    assertThrows(IllegalArgumentException.class, () -> new LeadingZerosValidator(-1));
+  } // leadingZeroBytes()
+
+  /**
+   * Hashes are compared to the target as unsigned numbers.
+   */
+  @Test
+  public void target() {
+    BigInteger t = BigInteger.ONE.shiftLeft(244).multiply(BigInteger.valueOf(3));
+    HashValidator v = new TargetValidator(t);
+    assertEquals(t, ((TargetValidator) v).getTarget(), "target round-trips");
+    assertValid(true, v, bytes(0, 0x30), "equal to the target");
+    assertValid(true, v, bytes(0, 0x2F, 0xFF, 0xFF, 0xFF), "just under the target");
+    assertValid(false, v, bytes(0, 0x30, 0, 0, 0, 0, 0, 0, 0, 1), "just over the target");
+    assertValid(false, v, bytes(0x80), "high bit set");
+    assertValid(false, v, new byte[] {0, 0}, "wrong length");
+    assertFalse(v.mayBeValid(0x00310000), "first word over the target");
+
+    HashValidator max = new TargetValidator(BigInteger.ONE.shiftLeft(256).subtract(BigInteger.ONE));
+    byte[] ones = new byte[32];
+    Arrays.fill(ones, (byte) 0xFF);
+    assertValid(true, max, ones, "largest hash, largest target");
+    assertThrows(IllegalArgumentException.class,
+        () -> new TargetValidator(BigInteger.ONE.shiftLeft(256)));
+    assertThrows(IllegalArgumentException.class,
+        () -> new TargetValidator(BigInteger.valueOf(-1)));
+  } // target()
+
+  /**
+   * Mining with a built-in validator gives valid blocks.
+   */
+  @Test
+  public void mining() {
+    HashValidator v = new LeadingZerosValidator(10);
+    BlockChain chain = new BlockChain(v);
+    Block b = chain.mine(new Transaction("", "A", 5));
+    assertTrue(v.isValid(b.getHash()), "mined hash is valid");
+    assertTrue(b.getHash().get(0) == 0 && (b.getHash().get(1) & 0xC0) == 0,
+        "mined hash starts with 10 zero bits");
+    chain.append(b);
+    assertTrue(chain.isCorrect(), "chain with mined block is correct");
+  } // mining()
+} // class TestValidators